@@ -0,0 +1,218 @@
+package com.sojostudios.as3;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes a file only if its content changes. The bytes written are compared to the
+ * existing file as they come in. Nothing is written while they match, so an unchanged
+ * file keeps its modification time. At the first difference the output goes to a
+ * temporary file next to the target, which replaces the target on close.
+ *
+ * If writing fails, call {@link #discard()} to leave the target as it was.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class ChangedOutputStream extends OutputStream
+{
+	private File target = null;
+	private InputStream existing = null;
+	private long matched = 0;
+	private byte[] compare = new byte[8192];
+
+	private File temp = null;
+	private OutputStream out = null;
+
+	private boolean closed = false;
+	private boolean changed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param target the file to write
+	 * @throws IOException
+	 */
+	public ChangedOutputStream(File target) throws IOException
+	{
+		this.target = target;
+		if (target.isFile())
+		{
+			existing = new FileInputStream(target);
+		}
+		else
+		{
+			diverge();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		write(new byte[] { (byte)b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		if (out == null)
+		{
+			int same = compare(b, off, len);
+			matched += same;
+			if (same == len)
+			{
+				return;
+			}
+			diverge();
+			off += same;
+			len -= same;
+		}
+		out.write(b, off, len);
+	}
+
+	/**
+	 * Compare the next bytes of the existing file.
+	 *
+	 * @return the number of leading bytes that match
+	 */
+	private int compare(byte[] b, int off, int len) throws IOException
+	{
+		int same = 0;
+		while (same < len)
+		{
+			int read = existing.read(compare, 0, Math.min(compare.length, len - same));
+			if (read < 0)
+			{
+				return same;
+			}
+			for (int i = 0; i < read; i++)
+			{
+				if (compare[i] != b[off + same + i])
+				{
+					return same + i;
+				}
+			}
+			same += read;
+		}
+		return same;
+	}
+
+	/**
+	 * Switch from comparing to writing a temporary file, starting with the bytes
+	 * that matched so far.
+	 */
+	private void diverge() throws IOException
+	{
+		changed = true;
+		File dir = target.getAbsoluteFile().getParentFile();
+		temp = File.createTempFile(target.getName(), ".tmp", dir);
+		out = new BufferedOutputStream(new FileOutputStream(temp));
+		if (existing != null)
+		{
+			existing.close();
+			existing = new FileInputStream(target);
+			long remaining = matched;
+			while (remaining > 0)
+			{
+				int read = existing.read(compare, 0, (int)Math.min(compare.length, remaining));
+				if (read < 0)
+				{
+					throw new IOException("File " + target + " changed while writing");
+				}
+				out.write(compare, 0, read);
+				remaining -= read;
+			}
+			existing.close();
+			existing = null;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		if (out != null)
+		{
+			out.flush();
+		}
+	}
+
+	/**
+	 * Finish writing. Replaces the target if the content changed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+		if (out == null && existing.read() >= 0)
+		{
+			// existing file is longer
+			diverge();
+		}
+		closed = true;
+		if (existing != null)
+		{
+			existing.close();
+		}
+		if (out != null)
+		{
+			out.close();
+			if (!temp.renameTo(target))
+			{
+				// some platforms won't rename over an existing file
+				if (!target.delete() || !temp.renameTo(target))
+				{
+					temp.delete();
+					throw new IOException("Could not replace " + target);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Abandon the output and leave the target untouched. Does nothing after close().
+	 */
+	public void discard()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		changed = false;
+		try
+		{
+			if (existing != null)
+			{
+				existing.close();
+			}
+			if (out != null)
+			{
+				out.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			// the output is thrown away anyway
+		}
+		if (temp != null)
+		{
+			temp.delete();
+		}
+	}
+
+	/**
+	 * @return true if the target was (or will be) written, false if the content was the same
+	 */
+	public boolean isChanged()
+	{
+		return changed;
+	}
+}
@@ -0,0 +1,561 @@
+package com.sojostudios.as3;
+
+import japa.parser.ast.CompilationUnit;
+import japa.parser.ast.Node;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a parsed CompilationUnit into bytes and back, for the ParseCache. The
+ * javaparser nodes are not Serializable, so every node is written field by field:
+ * ints and enums as variable length numbers, Strings once and then by index, nodes
+ * by class and then their fields, lists by size and kind, ArrayList or LinkedList,
+ * and then their nodes. A node or list written before is written as its index.
+ * An int is written as the difference to the previous int of the same field name,
+ * since most nodes start on or near the line of the node before them. Reading it
+ * back builds the same tree, with the same positions, as parsing the source again.
+ *
+ * The fields of each node class are found once by reflection. Only ints, booleans,
+ * Strings, enums, nodes and lists of nodes are expected, which is all javaparser
+ * uses. The data field of Node is left out, it is always null after parsing.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+final class CompilationUnitCodec
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int INT = 0;
+	private static final int BOOLEAN = 1;
+	private static final int STRING = 2;
+	private static final int ENUM = 3;
+	private static final int NODE = 4;
+	private static final int LIST = 5;
+
+	// object tags, a class index follows KNOWN_CLASS
+	private static final int NULL = 0;
+	private static final int REFERENCE = 1;
+	private static final int NEW_CLASS = 2;
+	private static final int KNOWN_CLASS = 3;
+
+	private static final Map<Class<?>,NodeClass> nodeClasses = new ConcurrentHashMap<Class<?>,NodeClass>();
+	// int field name => index of its previous value, shared by all node classes
+	private static final Map<String,Integer> intSlots = new HashMap<String,Integer>();
+	private static final int MAX_INT_SLOTS = 32;
+
+	private CompilationUnitCodec()
+	{
+	}
+
+	/**
+	 * Encode a CompilationUnit. Call it before the unit is mutated.
+	 *
+	 * @param cu the parsed CompilationUnit
+	 * @return the encoded unit
+	 * @throws IOException if the tree holds something that can't be encoded
+	 */
+	static byte[] encode(CompilationUnit cu) throws IOException
+	{
+		Encoder encoder = new Encoder();
+		encoder.writeNode(cu);
+		return encoder.toByteArray();
+	}
+
+	/**
+	 * Decode a CompilationUnit.
+	 *
+	 * @param data the bytes
+	 * @param offset the index of the encoded unit in the bytes
+	 * @param length the length of the encoded unit
+	 * @return a new CompilationUnit
+	 * @throws IOException if the bytes are not an encoded unit
+	 */
+	static CompilationUnit decode(byte[] data, int offset, int length) throws IOException
+	{
+		Decoder decoder = new Decoder(data, offset, offset + length);
+		Object node = decoder.readNode();
+		if (!(node instanceof CompilationUnit) || decoder.pos != decoder.end)
+		{
+			throw new IOException("Not an encoded CompilationUnit");
+		}
+		return (CompilationUnit)node;
+	}
+
+	private static int intSlot(String name) throws IOException
+	{
+		synchronized (intSlots)
+		{
+			Integer slot = intSlots.get(name);
+			if (slot == null)
+			{
+				if (intSlots.size() == MAX_INT_SLOTS)
+				{
+					throw new IOException("Too many int fields in the node classes");
+				}
+				slot = intSlots.size();
+				intSlots.put(name, slot);
+			}
+			return slot;
+		}
+	}
+
+	private static NodeClass nodeClass(Class<?> type) throws IOException
+	{
+		NodeClass nodeClass = nodeClasses.get(type);
+		if (nodeClass == null)
+		{
+			nodeClass = new NodeClass(type);
+			nodeClasses.put(type, nodeClass);
+		}
+		return nodeClass;
+	}
+
+	/**
+	 * A node class with its fields in a stable order: superclass fields first, then
+	 * by name.
+	 */
+	private static class NodeClass
+	{
+		private final Constructor<?> constructor;
+		private final Field[] fields;
+		private final int[] kinds;
+		private final Object[][] constants;
+		private final int[] slots;
+
+		private NodeClass(Class<?> type) throws IOException
+		{
+			if (!Node.class.isAssignableFrom(type))
+			{
+				throw new IOException("Not a node class: " + type.getName());
+			}
+			try
+			{
+				constructor = type.getConstructor();
+			}
+			catch (NoSuchMethodException e)
+			{
+				throw new IOException("No default constructor in " + type.getName());
+			}
+			List<Field> found = new ArrayList<Field>();
+			List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+			for (Class<?> c = type; c != Object.class; c = c.getSuperclass())
+			{
+				hierarchy.add(0, c);
+			}
+			for (Class<?> c : hierarchy)
+			{
+				Field[] declared = c.getDeclaredFields();
+				Arrays.sort(declared, new Comparator<Field>()
+				{
+					@Override
+					public int compare(Field a, Field b)
+					{
+						return a.getName().compareTo(b.getName());
+					}
+				});
+				for (Field field : declared)
+				{
+					if (!Modifier.isStatic(field.getModifiers()) && field.getType() != Object.class)
+					{
+						field.setAccessible(true);
+						found.add(field);
+					}
+				}
+			}
+			fields = found.toArray(new Field[found.size()]);
+			kinds = new int[fields.length];
+			constants = new Object[fields.length][];
+			slots = new int[fields.length];
+			for (int i = 0; i < fields.length; i++)
+			{
+				Class<?> fieldType = fields[i].getType();
+				if (fieldType == int.class)
+				{
+					kinds[i] = INT;
+					slots[i] = intSlot(fields[i].getName());
+				}
+				else if (fieldType == boolean.class)
+				{
+					kinds[i] = BOOLEAN;
+				}
+				else if (fieldType == String.class)
+				{
+					kinds[i] = STRING;
+				}
+				else if (fieldType.isEnum())
+				{
+					kinds[i] = ENUM;
+					constants[i] = fieldType.getEnumConstants();
+				}
+				else if (Node.class.isAssignableFrom(fieldType))
+				{
+					kinds[i] = NODE;
+				}
+				else if (fieldType == List.class)
+				{
+					kinds[i] = LIST;
+				}
+				else
+				{
+					throw new IOException("Can't encode field " + type.getName() + "." + fields[i].getName() + " of type " + fieldType.getName());
+				}
+			}
+		}
+	}
+
+	private static class Encoder
+	{
+		private byte[] buffer = new byte[8192];
+		private int pos = 0;
+		private final Map<Class<?>,Integer> classes = new HashMap<Class<?>,Integer>();
+		private final Map<String,Integer> strings = new HashMap<String,Integer>();
+		private final Map<Object,Integer> objects = new IdentityHashMap<Object,Integer>();
+		private final int[] last = new int[MAX_INT_SLOTS];
+
+		private void writeNode(Object node) throws IOException
+		{
+			if (writeReference(node))
+			{
+				return;
+			}
+			Class<?> type = node.getClass();
+			NodeClass nodeClass = nodeClass(type);
+			Integer index = classes.get(type);
+			if (index == null)
+			{
+				writeInt(NEW_CLASS);
+				writeBytes(type.getName().getBytes(UTF8));
+				classes.put(type, classes.size());
+			}
+			else
+			{
+				writeInt(KNOWN_CLASS + index);
+			}
+			try
+			{
+				for (int i = 0; i < nodeClass.fields.length; i++)
+				{
+					Field field = nodeClass.fields[i];
+					switch (nodeClass.kinds[i])
+					{
+						case INT:
+							// relative to the previous value of the field, mostly the
+							// line of the previous node, then zig-zag so it stays short
+							int value = field.getInt(node);
+							int delta = value - last[nodeClass.slots[i]];
+							last[nodeClass.slots[i]] = value;
+							writeInt((delta << 1) ^ (delta >> 31));
+							break;
+						case BOOLEAN:
+							writeInt(field.getBoolean(node) ? 1 : 0);
+							break;
+						case STRING:
+							writeString((String)field.get(node));
+							break;
+						case ENUM:
+							Enum<?> constant = (Enum<?>)field.get(node);
+							writeInt(constant == null ? 0 : constant.ordinal() + 1);
+							break;
+						case NODE:
+							writeNode(field.get(node));
+							break;
+						default:
+							writeList((List<?>)field.get(node));
+					}
+				}
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new IOException("Can't read " + type.getName() + ": " + e.getMessage());
+			}
+		}
+
+		private void writeList(List<?> list) throws IOException
+		{
+			if (writeReference(list))
+			{
+				return;
+			}
+			// the parser makes both kinds, keep them for identical behavior
+			writeInt(NEW_CLASS + (list.size() << 1 | (list instanceof LinkedList ? 1 : 0)));
+			for (Object element : list)
+			{
+				writeNode(element);
+			}
+		}
+
+		/**
+		 * Write null or a reference to an object that was already written.
+		 *
+		 * @return false if the object still needs to be written
+		 */
+		private boolean writeReference(Object object)
+		{
+			if (object == null)
+			{
+				writeInt(NULL);
+				return true;
+			}
+			Integer index = objects.get(object);
+			if (index != null)
+			{
+				writeInt(REFERENCE);
+				writeInt(index);
+				return true;
+			}
+			objects.put(object, objects.size());
+			return false;
+		}
+
+		private void writeString(String value)
+		{
+			if (value == null)
+			{
+				writeInt(0);
+				return;
+			}
+			Integer index = strings.get(value);
+			if (index != null)
+			{
+				writeInt(index + 2);
+				return;
+			}
+			strings.put(value, strings.size());
+			writeInt(1);
+			writeBytes(value.getBytes(UTF8));
+		}
+
+		private void writeBytes(byte[] bytes)
+		{
+			writeInt(bytes.length);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+			pos += bytes.length;
+		}
+
+		private void writeInt(int value)
+		{
+			ensure(5);
+			while ((value & ~0x7f) != 0)
+			{
+				buffer[pos++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buffer[pos++] = (byte)value;
+		}
+
+		private void ensure(int length)
+		{
+			if (pos + length > buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + length));
+			}
+		}
+
+		private byte[] toByteArray()
+		{
+			return Arrays.copyOf(buffer, pos);
+		}
+	}
+
+	private static class Decoder
+	{
+		private final byte[] data;
+		private int pos;
+		private final int end;
+		private final List<NodeClass> classes = new ArrayList<NodeClass>();
+		private final List<String> strings = new ArrayList<String>();
+		private final List<Object> objects = new ArrayList<Object>();
+		private final int[] last = new int[MAX_INT_SLOTS];
+
+		private Decoder(byte[] data, int offset, int end)
+		{
+			this.data = data;
+			this.pos = offset;
+			this.end = end;
+		}
+
+		private Object readNode() throws IOException
+		{
+			int tag = readInt();
+			if (tag == NULL)
+			{
+				return null;
+			}
+			if (tag == REFERENCE)
+			{
+				return reference();
+			}
+			NodeClass nodeClass;
+			if (tag == NEW_CLASS)
+			{
+				String name = readString(readInt());
+				try
+				{
+					nodeClass = nodeClass(Class.forName(name, true, CompilationUnitCodec.class.getClassLoader()));
+				}
+				catch (ClassNotFoundException e)
+				{
+					throw new IOException("Unknown node class " + name);
+				}
+				classes.add(nodeClass);
+			}
+			else if (tag - KNOWN_CLASS < classes.size())
+			{
+				nodeClass = classes.get(tag - KNOWN_CLASS);
+			}
+			else
+			{
+				throw new IOException("Bad class index " + (tag - KNOWN_CLASS));
+			}
+			try
+			{
+				Object node = nodeClass.constructor.newInstance();
+				objects.add(node);
+				for (int i = 0; i < nodeClass.fields.length; i++)
+				{
+					Field field = nodeClass.fields[i];
+					switch (nodeClass.kinds[i])
+					{
+						case INT:
+							int delta = readInt();
+							int value = last[nodeClass.slots[i]] + ((delta >>> 1) ^ -(delta & 1));
+							last[nodeClass.slots[i]] = value;
+							field.setInt(node, value);
+							break;
+						case BOOLEAN:
+							field.setBoolean(node, readInt() != 0);
+							break;
+						case STRING:
+							field.set(node, readStringRef());
+							break;
+						case ENUM:
+							int ordinal = readInt();
+							if (ordinal > nodeClass.constants[i].length)
+							{
+								throw new IOException("Bad constant " + ordinal + " for " + field.getName());
+							}
+							field.set(node, ordinal == 0 ? null : nodeClass.constants[i][ordinal - 1]);
+							break;
+						case NODE:
+							field.set(node, readNode());
+							break;
+						default:
+							field.set(node, readList());
+					}
+				}
+				return node;
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				// wrong types in a damaged entry, or a node class that changed
+				throw new IOException("Can't decode " + nodeClass.constructor.getName() + ": " + e);
+			}
+		}
+
+		private List<Object> readList() throws IOException
+		{
+			int tag = readInt();
+			if (tag == NULL)
+			{
+				return null;
+			}
+			if (tag == REFERENCE)
+			{
+				@SuppressWarnings("unchecked")
+				List<Object> list = (List<Object>)reference();
+				return list;
+			}
+			int size = (tag - NEW_CLASS) >>> 1;
+			if (size > end - pos)
+			{
+				throw new IOException("Bad list size " + size);
+			}
+			List<Object> list = ((tag - NEW_CLASS) & 1) != 0 ? new LinkedList<Object>() : new ArrayList<Object>(size);
+			objects.add(list);
+			for (int i = 0; i < size; i++)
+			{
+				list.add(readNode());
+			}
+			return list;
+		}
+
+		private Object reference() throws IOException
+		{
+			int index = readInt();
+			if (index >= objects.size())
+			{
+				throw new IOException("Bad reference " + index);
+			}
+			return objects.get(index);
+		}
+
+		private String readStringRef() throws IOException
+		{
+			int tag = readInt();
+			if (tag == 0)
+			{
+				return null;
+			}
+			if (tag == 1)
+			{
+				String value = readString(readInt());
+				strings.add(value);
+				return value;
+			}
+			if (tag - 2 >= strings.size())
+			{
+				throw new IOException("Bad string index " + (tag - 2));
+			}
+			return strings.get(tag - 2);
+		}
+
+		private String readString(int length) throws IOException
+		{
+			if (length < 0 || length > end - pos)
+			{
+				throw new IOException("Bad string length " + length);
+			}
+			String value = new String(data, pos, length, UTF8);
+			pos += length;
+			return value;
+		}
+
+		private int readInt() throws IOException
+		{
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7)
+			{
+				if (pos >= end)
+				{
+					throw new IOException("Truncated CompilationUnit");
+				}
+				byte b = data[pos++];
+				value |= (b & 0x7f) << shift;
+				if (b >= 0)
+				{
+					return value;
+				}
+			}
+			throw new IOException("Bad number");
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.sojostudios.as3;
+
+/**
+ * Receives the results of a batch compilation started with
+ * {@link JavaToAS3Compiler#compileStrings(java.util.List, java.util.concurrent.Executor, CompileCallback)}.
+ * Called on the thread that ran the compilation, in completion order.
+ * 
+ * @author Kurtis Kopf
+ *
+ */
+public interface CompileCallback
+{
+	/**
+	 * A source was compiled.
+	 * 
+	 * @param index the index of the source in the batch
+	 * @param output the AS3 code
+	 */
+	void compiled(int index, String output);
+	
+	/**
+	 * A source failed to compile.
+	 * 
+	 * @param index the index of the source in the batch
+	 * @param error the cause, usually a ParseException
+	 */
+	void failed(int index, Throwable error);
+}
@@ -0,0 +1,221 @@
+package com.sojostudios.as3;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Keeps track of the source files that were translated into an output tree, so
+ * an incremental compile can skip the sources that did not change.
+ *
+ * The manifest stores a content hash for every source file plus a fingerprint
+ * of the mutation options that were used. A source needs to be compiled again
+ * when its hash differs from the recorded one, or when the fingerprint changed.
+ * Sources that are not recorded again before {@link #save()} are dropped, so
+ * deleted sources don't linger in the manifest.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class CompileManifest
+{
+	public static final String FILE_NAME = ".javatoas3-manifest";
+
+	private static final String FORMAT_KEY = "format";
+	private static final String FORMAT_VERSION = "1";
+	private static final String FINGERPRINT_KEY = "fingerprint";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private File file = null;
+	private Properties previous = new Properties();
+	private Properties current = new Properties();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file the manifest file, does not need to exist yet.
+	 */
+	public CompileManifest(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Get the manifest file for an input/output pair of the compiler file map.
+	 * The manifest lives in the output directory, or next to the output file.
+	 *
+	 * @param input the input file or directory
+	 * @param output the output file or directory, may be null
+	 * @return the manifest file
+	 */
+	public static File locate(File input, File output)
+	{
+		File base = output != null ? output : input;
+		if (input.isDirectory() || base.isDirectory())
+		{
+			return new File(base, FILE_NAME);
+		}
+		return new File(base.getAbsoluteFile().getParentFile(), FILE_NAME);
+	}
+
+	/**
+	 * Load the previous state of the manifest, if there is one. The previous state
+	 * is discarded when it was written with different mutation options.
+	 *
+	 * @param fingerprint the fingerprint of the current mutation options
+	 * @throws IOException
+	 */
+	public synchronized void load(String fingerprint) throws IOException
+	{
+		previous.clear();
+		if (file.isFile())
+		{
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				previous.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+			if (!FORMAT_VERSION.equals(previous.getProperty(FORMAT_KEY))
+					|| !fingerprint.equals(previous.getProperty(FINGERPRINT_KEY)))
+			{
+				previous.clear();
+			}
+		}
+		current.clear();
+		current.setProperty(FORMAT_KEY, FORMAT_VERSION);
+		current.setProperty(FINGERPRINT_KEY, fingerprint);
+	}
+
+	/**
+	 * Check if a source was translated with the same content before.
+	 *
+	 * @param source the source file
+	 * @param hash the content hash of the source file
+	 * @return true if the recorded hash matches
+	 */
+	public synchronized boolean isUpToDate(File source, String hash)
+	{
+		return hash.equals(previous.getProperty(key(source)));
+	}
+
+	/**
+	 * Record a source as translated.
+	 *
+	 * @param source the source file
+	 * @param hash the content hash of the source file
+	 */
+	public synchronized void record(File source, String hash)
+	{
+		current.setProperty(key(source), hash);
+	}
+
+	/**
+	 * Write the recorded state to the manifest file.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			current.store(out, "java-to-as3 incremental compilation manifest");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private String key(File source)
+	{
+		return source.getAbsolutePath();
+	}
+
+	/**
+	 * Hash the content of a file.
+	 *
+	 * @param source the file
+	 * @return hex encoded SHA-1 of the file content
+	 * @throws IOException
+	 */
+	public static String hash(File source) throws IOException
+	{
+		MessageDigest digest = newDigest();
+		InputStream in = new FileInputStream(source);
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Hash a block of bytes.
+	 *
+	 * @param data the bytes
+	 * @return hex encoded SHA-1 of the bytes
+	 */
+	public static String hash(byte[] data)
+	{
+		return toHex(newDigest().digest(data));
+	}
+
+	/**
+	 * Hash the remaining bytes of a buffer, without moving its position.
+	 *
+	 * @param data the bytes
+	 * @return hex encoded SHA-1 of the bytes
+	 */
+	public static String hash(ByteBuffer data)
+	{
+		MessageDigest digest = newDigest();
+		digest.update(data.duplicate());
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every JRE has to provide SHA-1
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,423 @@
+package com.sojostudios.as3;
+
+import japa.parser.ParseException;
+import japa.parser.ast.CompilationUnit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.sojostudios.as3.JavaToAS3Compiler.CompileJob;
+import com.sojostudios.as3.visitors.AS3DumpVisitor;
+import com.sojostudios.as3.visitors.Diagnostics;
+import com.sojostudios.as3.visitors.MutationConfig;
+import com.sojostudios.as3.visitors.SourceMap;
+
+/**
+ * Compiles source files in five stages connected by bounded queues: read, parse,
+ * mutate, dump and write. Each stage runs on its own thread, so file I/O overlaps
+ * with parsing and dumping, and only a fixed number of sources, ASTs and outputs are
+ * held in memory at once, no matter how large the tree is. In fused mode the mutate
+ * stage only passes the ASTs on and the dump stage mutates them while it dumps.
+ *
+ * Every stage keeps its queue depth and the time spent working, waiting for input
+ * and waiting to hand off. The slowest stage is busy most of the time, the stages
+ * before it are blocked and the ones after it are idle.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class CompilePipeline
+{
+	/**
+	 * Marks the end of the input, passed on by every stage.
+	 */
+	private static final Work END = new Work(null);
+
+	private final Logger logger = Logger.getLogger(getClass());
+
+	private final JavaToAS3Compiler compiler;
+	private final int queueSize;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private volatile Throwable failure = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param compiler the configured compiler
+	 * @param config the mutation options to create a visitor per file from
+	 * @param queueSize capacity of the queue in front of each stage
+	 */
+	CompilePipeline(final JavaToAS3Compiler compiler, final MutationConfig config, int queueSize)
+	{
+		this.compiler = compiler;
+		this.queueSize = queueSize;
+
+		stages.add(new Stage("read")
+		{
+			@Override
+			void process(Work work) throws Exception
+			{
+				work.source = SourceReader.read(work.job.input);
+			}
+		});
+		stages.add(new Stage("parse")
+		{
+			@Override
+			void process(Work work) throws Exception
+			{
+				logger.info("Parsing " + work.job.input.getPath() + "...");
+				work.sourceLength = work.source.remaining();
+				work.cu = compiler.parse(work.source);
+				work.source = null;
+				work.diagnostics = compiler.newDiagnostics(work.job.input.getPath());
+			}
+		});
+		stages.add(new Stage("mutate")
+		{
+			@Override
+			void process(Work work) throws Exception
+			{
+				compiler.mutate(work.cu, config, work.diagnostics);
+			}
+		});
+		stages.add(new Stage("dump")
+		{
+			@Override
+			void process(Work work) throws Exception
+			{
+				// the AS3 code comes out about as long as the Java source
+				work.output = new ByteArrayOutputStream(Math.max(32, work.sourceLength));
+				Writer out = compiler.openWriter(work.output);
+				AS3DumpVisitor as3 = compiler.dumpVisitor(out, config, work.diagnostics);
+				if (compiler.isSourceMaps())
+				{
+					work.sourceMap = compiler.newSourceMap(compiler.outputFileFor(work.job.input, work.job.output), work.job.input.getPath());
+					as3.setSourceMap(work.sourceMap);
+				}
+				as3.visit(work.cu, null);
+				as3.flush();
+				out.close();
+				work.cu = null;
+			}
+		});
+		stages.add(new Stage("write")
+		{
+			@Override
+			void process(Work work) throws Exception
+			{
+				CompileJob job = work.job;
+				File outputFile = compiler.outputFileFor(job.input, job.output);
+				compiler.writeOutput(work.output, outputFile);
+				compiler.writeSourceMap(work.sourceMap, outputFile);
+				compiler.finishDiagnostics(work.diagnostics);
+				if (job.manifest != null)
+				{
+					job.manifest.record(job.input, job.hash);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Compile the jobs. Stops at the first failure, like the serial path.
+	 *
+	 * @param jobs the compile jobs
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	void run(List<CompileJob> jobs) throws ParseException, IOException
+	{
+		failure = null;
+		BlockingQueue<Work> in = new ArrayBlockingQueue<Work>(queueSize);
+		BlockingQueue<Work> first = in;
+		for (Stage stage : stages)
+		{
+			BlockingQueue<Work> out = stage == stages.get(stages.size() - 1) ? null : new ArrayBlockingQueue<Work>(queueSize);
+			stage.reset(in, out);
+			in = out;
+		}
+
+		logger.info("Compiling " + jobs.size() + " files in " + stages.size() + " stages");
+		ExecutorService executor = Executors.newFixedThreadPool(stages.size());
+		try
+		{
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (Stage stage : stages)
+			{
+				results.add(executor.submit(stage));
+			}
+			for (CompileJob job : jobs)
+			{
+				if (failure != null)
+				{
+					break;
+				}
+				first.put(new Work(job));
+			}
+			first.put(END);
+			for (Future<?> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compiling");
+		}
+		catch (ExecutionException ee)
+		{
+			failure = ee.getCause();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		for (Stage stage : stages)
+		{
+			logger.info(stage);
+		}
+
+		Throwable cause = failure;
+		if (cause == null)
+		{
+			return;
+		}
+		if (cause instanceof ParseException)
+		{
+			throw (ParseException)cause;
+		}
+		if (cause instanceof IOException)
+		{
+			throw (IOException)cause;
+		}
+		if (cause instanceof RuntimeException)
+		{
+			throw (RuntimeException)cause;
+		}
+		if (cause instanceof Error)
+		{
+			throw (Error)cause;
+		}
+		throw new RuntimeException(cause);
+	}
+
+	/**
+	 * @return the stages in order, with their statistics. These can be read while
+	 *         the pipeline runs.
+	 */
+	public List<Stage> getStages()
+	{
+		return Collections.unmodifiableList(stages);
+	}
+
+	/**
+	 * @return the queueSize
+	 */
+	public int getQueueSize()
+	{
+		return queueSize;
+	}
+
+	/**
+	 * A source file on its way through the stages. Each stage drops what the next
+	 * ones don't need, so it can be collected early.
+	 */
+	private static class Work
+	{
+		private final CompileJob job;
+		private ByteBuffer source = null;
+		private int sourceLength = 0;
+		private CompilationUnit cu = null;
+		private ByteArrayOutputStream output = null;
+		private Diagnostics diagnostics = null;
+		private SourceMap sourceMap = null;
+
+		private Work(CompileJob job)
+		{
+			this.job = job;
+		}
+	}
+
+	/**
+	 * One step of the pipeline, running on its own thread.
+	 */
+	public abstract class Stage implements Runnable
+	{
+		private final String name;
+		private BlockingQueue<Work> in = null;
+		private BlockingQueue<Work> out = null;
+
+		private volatile int count = 0;
+		private volatile int maxQueueDepth = 0;
+		private volatile long busyNanos = 0;
+		private volatile long idleNanos = 0;
+		private volatile long blockedNanos = 0;
+
+		private Stage(String name)
+		{
+			this.name = name;
+		}
+
+		private void reset(BlockingQueue<Work> in, BlockingQueue<Work> out)
+		{
+			this.in = in;
+			this.out = out;
+			count = 0;
+			maxQueueDepth = 0;
+			busyNanos = 0;
+			idleNanos = 0;
+			blockedNanos = 0;
+		}
+
+		/**
+		 * Do this stage's part of the work.
+		 */
+		abstract void process(Work work) throws Exception;
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					long start = System.nanoTime();
+					int depth = in.size();
+					if (depth > maxQueueDepth)
+					{
+						maxQueueDepth = depth;
+					}
+					Work work = in.take();
+					long taken = System.nanoTime();
+					idleNanos += taken - start;
+					if (work == END)
+					{
+						pass(work);
+						return;
+					}
+					if (failure != null)
+					{
+						// drain until the end marker, so no stage stays blocked
+						continue;
+					}
+					try
+					{
+						process(work);
+						count++;
+					}
+					catch (Throwable t)
+					{
+						fail(t);
+						continue;
+					}
+					long done = System.nanoTime();
+					busyNanos += done - taken;
+					pass(work);
+					blockedNanos += System.nanoTime() - done;
+				}
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void pass(Work work) throws InterruptedException
+		{
+			if (out != null)
+			{
+				out.put(work);
+			}
+		}
+
+		private void fail(Throwable t)
+		{
+			synchronized (CompilePipeline.this)
+			{
+				if (failure == null)
+				{
+					failure = t;
+				}
+			}
+		}
+
+		/**
+		 * @return the name
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the number of files waiting for this stage right now
+		 */
+		public int getQueueDepth()
+		{
+			return in == null ? 0 : in.size();
+		}
+
+		/**
+		 * @return the most files seen waiting for this stage
+		 */
+		public int getMaxQueueDepth()
+		{
+			return maxQueueDepth;
+		}
+
+		/**
+		 * @return the number of files this stage finished
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * @return milliseconds spent working on files
+		 */
+		public long getBusyTime()
+		{
+			return busyNanos / 1000000;
+		}
+
+		/**
+		 * @return milliseconds spent waiting for the previous stage
+		 */
+		public long getIdleTime()
+		{
+			return idleNanos / 1000000;
+		}
+
+		/**
+		 * @return milliseconds spent waiting for room in the next stage's queue
+		 */
+		public long getBlockedTime()
+		{
+			return blockedNanos / 1000000;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + ": " + count + " files, busy " + getBusyTime() + " ms, idle " + getIdleTime() + " ms, blocked "
+					+ getBlockedTime() + " ms, max queue " + maxQueueDepth + "/" + queueSize;
+		}
+	}
+}
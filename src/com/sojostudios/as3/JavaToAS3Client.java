@@ -0,0 +1,178 @@
+package com.sojostudios.as3;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Thin client for the JavaToAS3Daemon. Sends one request and prints the response.
+ * Exits with status 1 when the request failed. The token sent with the request is
+ * read from the token file of the daemon.
+ *
+ * @see JavaToAS3Daemon
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class JavaToAS3Client
+{
+	private int port = JavaToAS3Daemon.DEFAULT_PORT;
+	private File tokenFile = null;
+
+	/**
+	 * Constructor.
+	 */
+	public JavaToAS3Client()
+	{
+
+	}
+
+	/**
+	 * Send a single request line to the daemon.
+	 *
+	 * @param request the request line, without the token
+	 * @return the response line
+	 * @throws IOException if the token can't be read or the daemon can't be reached
+	 */
+	public String send(String request) throws IOException
+	{
+		String token = readToken();
+		Socket socket = new Socket(InetAddress.getByName(null), port);
+		try
+		{
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), JavaToAS3Daemon.PROTOCOL_CHARSET);
+			out.write(token);
+			out.write(' ');
+			out.write(request);
+			out.write("\n");
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), JavaToAS3Daemon.PROTOCOL_CHARSET));
+			String response = in.readLine();
+			if (response == null)
+			{
+				throw new IOException("Daemon closed the connection");
+			}
+			return response;
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	/**
+	 * Read the token the daemon wrote at startup.
+	 */
+	private String readToken() throws IOException
+	{
+		File file = tokenFile != null ? tokenFile : JavaToAS3Daemon.defaultTokenFile(port);
+		if (!file.isFile())
+		{
+			throw new IOException("No token file " + file + ", is the daemon running on port " + port + "?");
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), JavaToAS3Daemon.PROTOCOL_CHARSET));
+		try
+		{
+			String token = in.readLine();
+			if (token == null)
+			{
+				throw new IOException("Empty token file " + file);
+			}
+			return token.trim();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Ask the daemon to compile a Java input file or directory.
+	 *
+	 * @param input Input file or directory
+	 * @param output Output file or directory
+	 * @return the response line
+	 * @throws IOException
+	 */
+	public String compile(File input, File output) throws IOException
+	{
+		return send("compile " + input.getAbsolutePath() + "\t" + output.getAbsolutePath());
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		JavaToAS3Client me = new JavaToAS3Client();
+		int i = 0;
+		while (args.length - i > 1 && (args[i].equals("--port") || args[i].equals("--token-file")))
+		{
+			if (args[i].equals("--port"))
+			{
+				me.setPort(Integer.parseInt(args[i + 1]));
+			}
+			else
+			{
+				me.setTokenFile(new File(args[i + 1]));
+			}
+			i += 2;
+		}
+		if (args.length - i < 1 || (args.length - i < 2 && !args[i].equals("--shutdown")))
+		{
+			System.out.println("Usage: java JavaToAS3Client [--port <port>] [--token-file <file>] <input file or directory> <output file or directory>");
+			System.out.println("       java JavaToAS3Client [--port <port>] [--token-file <file>] --shutdown");
+			return;
+		}
+
+		String response;
+		if (args[i].equals("--shutdown"))
+		{
+			response = me.send("shutdown");
+		}
+		else
+		{
+			response = me.compile(new File(args[i]), new File(args[i + 1]));
+		}
+		System.out.println(response);
+		if (!response.startsWith("ok"))
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the port
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+
+	/**
+	 * @param port the port to set
+	 */
+	public void setPort(int port)
+	{
+		this.port = port;
+	}
+
+	/**
+	 * @return the tokenFile
+	 */
+	public File getTokenFile()
+	{
+		return tokenFile;
+	}
+
+	/**
+	 * @param tokenFile the token file of the daemon, null for its default on the port
+	 */
+	public void setTokenFile(File tokenFile)
+	{
+		this.tokenFile = tokenFile;
+	}
+}
@@ -5,19 +5,48 @@ import japa.parser.ParseException;
 import japa.parser.ast.CompilationUnit;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.log4j.Logger;
 
 import com.sojostudios.as3.visitors.AS3DumpVisitor;
+import com.sojostudios.as3.visitors.AS3FusedVisitor;
 import com.sojostudios.as3.visitors.AS3MutationVisitor;
+import com.sojostudios.as3.visitors.Diagnostics;
+import com.sojostudios.as3.visitors.MethodRewrites;
+import com.sojostudios.as3.visitors.MutationConfig;
+import com.sojostudios.as3.visitors.OutputProfile;
+import com.sojostudios.as3.visitors.SourceMap;
+import com.sojostudios.as3.visitors.TypeClassifier;
 
 /**
  * This class will take java source files as input and generate AS3 source files
@@ -31,6 +60,59 @@ import com.sojostudios.as3.visitors.AS3MutationVisitor;
  * - includeDefaultMutations: boolean, default is true.
  * -- use to include the default options, such as converting Lists to Vectors, etc.
  * 
+ * - threads: int, default is 1.
+ * -- number of worker threads used by compileAll. Each source file is parsed, mutated
+ *    and dumped by a single worker with its own visitors, so the output is the same
+ *    as with one thread.
+ * 
+ * - incremental: boolean, default is false.
+ * -- only compile the sources that changed since the last compileAll. A manifest
+ *    with the content hash of every source and a fingerprint of the mutation options
+ *    is kept in the output directory. Changing any option recompiles everything.
+ * 
+ * - encoding: String, default is the platform encoding.
+ * -- character encoding of the Java source files and the generated AS3 files.
+ * 
+ * - pipeline: boolean, default is false.
+ * -- compile in separate read, parse, mutate, dump and write stages connected by
+ *    bounded queues (see CompilePipeline). I/O overlaps with parsing and dumping, and
+ *    only pipelineQueueSize files per stage are held in memory. Takes precedence
+ *    over threads.
+ * 
+ * - pipelineQueueSize: int, default is 8.
+ * -- capacity of the queue in front of each pipeline stage.
+ * 
+ * - fused: boolean, default is false.
+ * -- mutate and dump each file in a single pass over its AST (see AS3FusedVisitor)
+ *    instead of one pass to mutate and one to dump. The output is the same.
+ * 
+ * - diagnosticsMode: Diagnostics.Mode, default is SUMMARY.
+ * -- what the visitors report about each file: renamed types, converted declarations,
+ *    replaced primitives, unsupported constructs. SUMMARY logs one line of counts
+ *    per file, DETAIL logs every message as well, OFF reports nothing. The totals
+ *    of the last compileAll are kept in getDiagnostics().
+ * 
+ * - outputProfile: OutputProfile, default is STANDARD.
+ * -- layout of the generated AS3. STANDARD keeps javadoc and comments, indents with
+ *    tabs and puts a blank line between members. COMPACT drops all of that for
+ *    smaller release sources that compc parses faster, one statement per line.
+ * 
+ * - sourceMaps: boolean, default is false.
+ * -- write a version 3 source map next to each AS3 file, Foo.as.map for Foo.as,
+ *    mapping every AS3 line to the Java line and column it came from (see SourceMap).
+ *    SourceMapLookup uses them to point the lines of a Flash profiler or stack trace
+ *    back to the Java source.
+ * 
+ * - parseCacheDir: File, default is null.
+ * -- directory of a ParseCache, which keeps the parsed sources keyed by their content
+ *    hash. A source that did not change is loaded from it instead of parsed again,
+ *    so after changing only the mutation options a compile costs just the mutation
+ *    and the dump. Off if null.
+ * 
+ * - parseCacheSize: long, default is 64 MB.
+ * -- the most bytes kept in the parse cache, the least recently used sources are
+ *    dropped first.
+ * 
  * - forceSprite: boolean, default is false.
  * -- use to force the target compilation class to extend the Sprite class, useful
  *    when generating a class to target for a SWF. Only works if the class doesn't
@@ -105,15 +187,56 @@ import com.sojostudios.as3.visitors.AS3MutationVisitor;
  *   delete x["a"];
  *   </pre>
  * 
+ * - methodRewrites: extra rewrites of method calls on converted variables, keyed by
+ *   type or mutation flag, method name and number of arguments (see MethodRewrites).
+ *   They are added to the built-in rewrites shown above and replace them on the same key.
+ * 
+ * All options but methodRewrites can also be set by name from a properties file,
+ * with setOptions or the --config command line flag.
+ * 
+ * The options are frozen for the visitors when a compile first needs them, and
+ * frozen again after a setter is called or a getter hands out one of the maps or
+ * lists. Change a map or list right after getting it, a reference kept from
+ * before the last compile is not watched.
+ * 
+ * Inputs ending in .zip or .jar are read as archives of Java sources, for example a
+ * -sources.jar. The AS3 files are written into the output directory, or into an
+ * archive if the output ends in .zip or .jar as well. Archive entries are compiled
+ * on one thread and are not tracked by incremental compiles.
+ * 
  * @author Kurtis Kopf
  *
  */
 public class JavaToAS3Compiler
 {
+	private static final Charset STRING_CHARSET = Charset.forName("UTF-8");
+	
 	private final Logger logger = Logger.getLogger(getClass());
 
 	private Map<File,File> files = new HashMap<File,File>();
 	private boolean includeDefaultMutations = true;
+	private int threads = 1;
+	private boolean incremental = false;
+	private String encoding = null;
+	private boolean pipeline = false;
+	private int pipelineQueueSize = 8;
+	private boolean fused = false;
+	private Diagnostics.Mode diagnosticsMode = Diagnostics.Mode.SUMMARY;
+	private OutputProfile outputProfile = OutputProfile.STANDARD;
+	private boolean sourceMaps = false;
+	private File parseCacheDir = null;
+	private long parseCacheSize = ParseCache.DEFAULT_MAX_SIZE;
+	private ParseCache parseCache = null;
+	private CompilePipeline lastPipeline = null;
+	
+	// both dropped by optionsChanged(), and built again when next needed
+	private volatile MutationConfig mutationConfig = null;
+	private String mutationFingerprint = null;
+	
+	private AtomicInteger writtenCount = new AtomicInteger();
+	private AtomicInteger unchangedCount = new AtomicInteger();
+	private AtomicInteger skippedCount = new AtomicInteger();
+	private volatile Diagnostics diagnostics = new Diagnostics(Diagnostics.Mode.SUMMARY);
 	
 	private Map<String,String> packageToPackage = new HashMap<String,String>();
 	private Map<String,String> classesToClasses = new HashMap<String,String>();
@@ -132,6 +255,7 @@ public class JavaToAS3Compiler
 	private String arrayClass = null;
 	private String vectorClass = null;
 	private String dictionaryClass = null;
+	private MethodRewrites methodRewrites = new MethodRewrites();
 	
 	/**
 	 * Constructor.
@@ -149,26 +273,132 @@ public class JavaToAS3Compiler
 	 */
 	public void compileAll() throws ParseException, IOException
 	{
+		resetCounts();
 		if (files != null && files.size() > 0)
 		{
+			List<CompileJob> jobs = new ArrayList<CompileJob>();
+			Map<File,File> archives = new HashMap<File,File>();
+			Map<File,CompileManifest> manifests = new HashMap<File,CompileManifest>();
+			String fingerprint = incremental ? mutationFingerprint() : null;
 			for (File input : files.keySet())
 			{
 				File output = files.get(input);
-				recursiveCompileFile(input, output);
+				if (input.isFile() && isArchive(input))
+				{
+					archives.put(input, output);
+					continue;
+				}
+				CompileManifest manifest = null;
+				if (incremental)
+				{
+					File manifestFile = CompileManifest.locate(input, output);
+					manifest = manifests.get(manifestFile);
+					if (manifest == null)
+					{
+						manifest = new CompileManifest(manifestFile);
+						manifest.load(fingerprint);
+						manifests.put(manifestFile, manifest);
+					}
+				}
+				collectSources(input, output, manifest, jobs);
+			}
+			
+			try
+			{
+				if (incremental)
+				{
+					jobs = removeUpToDate(jobs);
+				}
+				MutationConfig config = mutationConfig();
+				if (pipeline)
+				{
+					lastPipeline = new CompilePipeline(this, config, pipelineQueueSize);
+					lastPipeline.run(jobs);
+				}
+				else if (threads > 1)
+				{
+					compileParallel(jobs, config);
+				}
+				else
+				{
+					for (CompileJob job : jobs)
+					{
+						compileJob(job, config);
+					}
+				}
+				for (File archive : archives.keySet())
+				{
+					compileArchive(archive, archives.get(archive), config);
+				}
+				logger.info("Type classification cache: " + config.getClassifier());
+				if (getParseCache() != null)
+				{
+					logger.info("Parse cache: " + getParseCache());
+				}
+				if (diagnostics.getTotal() > 0)
+				{
+					logger.info("Diagnostics: " + diagnostics);
+				}
+			}
+			finally
+			{
+				// sources that failed or were never reached stay out of the manifest
+				for (CompileManifest manifest : manifests.values())
+				{
+					manifest.save();
+				}
 			}
 		}
+		logger.info("Compiled " + (writtenCount.get() + unchangedCount.get()) + " files: " + writtenCount.get() + " written, "
+				+ unchangedCount.get() + " unchanged, " + skippedCount.get() + " skipped as up to date");
 	}
-
+	
 	/**
-	 *  Compile a Java input file to an AS3 file. If the input file denotes a directory, all .java files
-	 *  in the directory will be compiled recursively
-	 *
-	 * @param input Input file
-	 * @param output Output file
+	 * Reset the written/unchanged/skipped file counters and the diagnostics totals.
+	 */
+	public void resetCounts()
+	{
+		writtenCount.set(0);
+		unchangedCount.set(0);
+		skippedCount.set(0);
+		diagnostics = new Diagnostics(diagnosticsMode == Diagnostics.Mode.OFF ? Diagnostics.Mode.OFF : Diagnostics.Mode.SUMMARY);
+	}
+	
+	/**
+	 * Compile a Java input file or directory without touching the File map, so
+	 * several threads can share one configured compiler.
+	 * 
+	 * @param input Input file or directory
+	 * @param output Output file or directory, may be null
 	 * @throws ParseException
 	 * @throws IOException
 	 */
-	private void recursiveCompileFile(File input, File output) throws ParseException, IOException
+	public void compile(File input, File output) throws ParseException, IOException
+	{
+		MutationConfig config = mutationConfig();
+		if (input.isFile() && isArchive(input))
+		{
+			compileArchive(input, output, config);
+			return;
+		}
+		List<CompileJob> jobs = new ArrayList<CompileJob>();
+		collectSources(input, output, null, jobs);
+		for (CompileJob job : jobs)
+		{
+			compileJob(job, config);
+		}
+	}
+	
+	/**
+	 * Collect the input/output pairs to compile. If the input file denotes a directory, all .java
+	 * files in the directory are collected recursively and the output directories are created.
+	 * 
+	 * @param input Input file
+	 * @param output Output file
+	 * @param manifest the incremental manifest, or null
+	 * @param jobs list receiving the compile jobs
+	 */
+	private void collectSources(File input, File output, CompileManifest manifest, List<CompileJob> jobs)
 	{
 		if (input.isDirectory())
 		{
@@ -179,7 +409,7 @@ public class JavaToAS3Compiler
 				if (file.isDirectory())
 				{
 					File fileOutput = new File(output, file.getName());
-					recursiveCompileFile(file, fileOutput);
+					collectSources(file, fileOutput, manifest, jobs);
 				}
 				else if (file.getName().endsWith(".java"))
 				{
@@ -188,13 +418,124 @@ public class JavaToAS3Compiler
 					{
 						output.mkdirs();
 					}
-					compileFile(file, output);
+					jobs.add(new CompileJob(file, output, manifest));
 				}
 			}
 		}
 		else
 		{
-			compileFile(input, output);
+			jobs.add(new CompileJob(input, output, manifest));
+		}
+	}
+	
+	/**
+	 * Drop the jobs whose source did not change since the last run and whose
+	 * output still exists.
+	 * 
+	 * @param jobs the collected jobs
+	 * @return the jobs that need compiling
+	 * @throws IOException
+	 */
+	private List<CompileJob> removeUpToDate(List<CompileJob> jobs) throws IOException
+	{
+		List<CompileJob> changed = new ArrayList<CompileJob>();
+		for (CompileJob job : jobs)
+		{
+			job.hash = CompileManifest.hash(job.input);
+			if (job.manifest.isUpToDate(job.input, job.hash) && outputFileFor(job.input, job.output).isFile())
+			{
+				job.manifest.record(job.input, job.hash);
+			}
+			else
+			{
+				changed.add(job);
+			}
+		}
+		skippedCount.addAndGet(jobs.size() - changed.size());
+		logger.info("Skipping " + (jobs.size() - changed.size()) + " unchanged files, compiling " + changed.size());
+		return changed;
+	}
+	
+	/**
+	 * Compile a single job and record it in its manifest.
+	 * 
+	 * @param job the job
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	private void compileJob(CompileJob job, MutationConfig config) throws ParseException, IOException
+	{
+		compileFile(job.input, job.output, config);
+		if (job.manifest != null)
+		{
+			job.manifest.record(job.input, job.hash);
+		}
+	}
+	
+	/**
+	 * Compile the collected jobs on a pool of worker threads. Stops at the first
+	 * failure, like the serial path.
+	 * 
+	 * @param jobs the compile jobs
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	private void compileParallel(List<CompileJob> jobs, final MutationConfig config) throws ParseException, IOException
+	{
+		// the parser cached by JavaParser is static and can't be shared between threads
+		JavaParser.setCacheParser(false);
+		
+		logger.info("Compiling " + jobs.size() + " files with " + threads + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (final CompileJob job : jobs)
+			{
+				results.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						compileJob(job, config);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compiling");
+		}
+		catch (ExecutionException ee)
+		{
+			Throwable cause = ee.getCause();
+			if (cause instanceof ParseException)
+			{
+				throw (ParseException)cause;
+			}
+			if (cause instanceof IOException)
+			{
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			executor.shutdownNow();
 		}
 	}
 	
@@ -207,153 +548,1030 @@ public class JavaToAS3Compiler
 	 * @throws IOException
 	 */
 	public void compileFile(File inputFile, File outputDir) throws ParseException, IOException
+	{
+		compileFile(inputFile, outputDir, mutationConfig());
+	}
+	
+	private void compileFile(File inputFile, File outputDir, MutationConfig config) throws ParseException, IOException
 	{
 		logger.info("Parsing "+inputFile.getPath() + "...");
 		
-		FileInputStream in = new FileInputStream(inputFile);
-		CompilationUnit cu = null;
-		cu = JavaParser.parse(in);
-		in.close();
-		
-		AS3MutationVisitor as3Mut = new AS3MutationVisitor();
-		if (includeDefaultMutations)
+		CompilationUnit cu = parse(SourceReader.read(inputFile));
+		Diagnostics diag = newDiagnostics(inputFile.getPath());
+		mutate(cu, config, diag);
+		writeOutput(cu, outputFileFor(inputFile, outputDir), inputFile.getPath(), config, diag);
+		finishDiagnostics(diag);
+	}
+	
+	/**
+	 * Compile all .java entries of a zip or jar archive. The AS3 files are written
+	 * below the output directory, following the entry paths, or into a new archive
+	 * if the output is a .zip or .jar file.
+	 * 
+	 * @param archive the archive with the Java sources
+	 * @param output Output directory or archive
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public void compileArchive(File archive, File output) throws ParseException, IOException
+	{
+		compileArchive(archive, output, mutationConfig());
+	}
+	
+	private void compileArchive(File archive, File output, MutationConfig config) throws ParseException, IOException
+	{
+		ZipFile zip = new ZipFile(archive);
+		try
+		{
+			if (isArchive(output))
+			{
+				compileArchiveToArchive(zip, output, config);
+			}
+			else
+			{
+				compileArchiveToDirectory(zip, output, config);
+			}
+		}
+		finally
 		{
-			as3Mut.includeDefaults();
+			zip.close();
 		}
-		mergeMutationOptions(as3Mut);
-		as3Mut.visit(cu, null);
-		
-		AS3DumpVisitor as3 = new AS3DumpVisitor();
-		as3.visit(cu, null);
-		String output = as3.toString();
-		//logger.debug("Compilation output:\n" + output);
-		
-		File outputFile = null;
-		// outputDir/File is optional
-		if (outputDir == null || outputDir.isDirectory())
+	}
+	
+	private void compileArchiveToDirectory(ZipFile zip, File output, MutationConfig config) throws ParseException, IOException
+	{
+		for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
 		{
-			String name = inputFile.getName().replace(".java", ".as");
-			outputFile = new File(outputDir, name);
+			ZipEntry entry = e.nextElement();
+			String path = entry.getName();
+			if (entry.isDirectory() || !path.endsWith(".java"))
+			{
+				continue;
+			}
+			checkEntryName(zip, path);
+			logger.info("Parsing " + zip.getName() + "!" + path + "...");
+			
+			int slash = path.lastIndexOf('/');
+			File outputDir = slash < 0 ? output : new File(output, path.substring(0, slash));
+			File outputFile = new File(outputDir, path.substring(slash + 1).replace(".java", ".as"));
+			// the entry name comes from the archive, make sure it can't write outside the output directory
+			String base = (output == null ? new File(".") : output).getCanonicalPath() + File.separator;
+			if (!outputFile.getCanonicalPath().startsWith(base))
+			{
+				throw new IOException("Entry " + zip.getName() + "!" + path + " would be written outside of " + base);
+			}
+			if (outputDir != null)
+			{
+				outputDir.mkdirs();
+			}
+			
+			CompilationUnit cu = parseEntry(zip, entry);
+			Diagnostics diag = newDiagnostics(zip.getName() + "!" + path);
+			mutate(cu, config, diag);
+			writeOutput(cu, outputFile, path, config, diag);
+			finishDiagnostics(diag);
+		}
+	}
+	
+	private void compileArchiveToArchive(ZipFile zip, File output, MutationConfig config) throws ParseException, IOException
+	{
+		// the whole archive is left alone if none of the entries changed
+		int entries = 0;
+		ChangedOutputStream changes = new ChangedOutputStream(output);
+		try
+		{
+			ZipOutputStream zipOut = new ZipOutputStream(changes);
+			Writer out = openWriter(zipOut);
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+			{
+				ZipEntry entry = e.nextElement();
+				String path = entry.getName();
+				if (entry.isDirectory() || !path.endsWith(".java"))
+				{
+					continue;
+				}
+				checkEntryName(zip, path);
+				logger.info("Parsing " + zip.getName() + "!" + path + "...");
+				
+				CompilationUnit cu = parseEntry(zip, entry);
+				Diagnostics diag = newDiagnostics(zip.getName() + "!" + path);
+				mutate(cu, config, diag);
+				
+				String outPath = path.substring(0, path.length() - ".java".length()) + ".as";
+				ZipEntry outEntry = new ZipEntry(outPath);
+				if (entry.getTime() != -1)
+				{
+					// keep the source time, so an unchanged archive comes out byte for byte the same
+					outEntry.setTime(entry.getTime());
+				}
+				zipOut.putNextEntry(outEntry);
+				AS3DumpVisitor as3 = dumpVisitor(out, config, diag);
+				SourceMap map = newSourceMap(new File(outPath), path);
+				as3.setSourceMap(map);
+				as3.visit(cu, null);
+				as3.flush();
+				zipOut.closeEntry();
+				if (map != null)
+				{
+					ZipEntry mapEntry = new ZipEntry(outPath + ".map");
+					mapEntry.setTime(outEntry.getTime());
+					zipOut.putNextEntry(mapEntry);
+					map.write(out);
+					out.flush();
+					zipOut.closeEntry();
+				}
+				finishDiagnostics(diag);
+				entries++;
+			}
+			zipOut.close();
+		}
+		finally
+		{
+			changes.discard();
+		}
+		if (changes.isChanged())
+		{
+			writtenCount.addAndGet(entries);
 		}
 		else
 		{
-			outputFile = outputDir;
+			logger.info(output.getPath() + " is unchanged");
+			unchangedCount.addAndGet(entries);
+		}
+	}
+	
+	/**
+	 * Reject absolute entry names and names with ".." segments, which would put
+	 * the output outside of the output directory or archive root.
+	 */
+	private static void checkEntryName(ZipFile zip, String path) throws IOException
+	{
+		boolean illegal = path.startsWith("/") || path.startsWith("\\") || new File(path).isAbsolute()
+				|| (path.length() > 1 && path.charAt(1) == ':');
+		for (String segment : path.split("[/\\\\]"))
+		{
+			illegal |= segment.equals("..");
+		}
+		if (illegal)
+		{
+			throw new IOException("Illegal entry name " + zip.getName() + "!" + path);
+		}
+	}
+	
+	private CompilationUnit parseEntry(ZipFile zip, ZipEntry entry) throws ParseException, IOException
+	{
+		InputStream in = zip.getInputStream(entry);
+		try
+		{
+			// read it whole, the parse cache needs the content hash first
+			ByteArrayOutputStream source = new ByteArrayOutputStream(entry.getSize() > 0 ? (int)entry.getSize() : 8192);
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+			{
+				source.write(buffer, 0, read);
+			}
+			return parse(ByteBuffer.wrap(source.toByteArray()));
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/**
+	 * @return true if the file name denotes a zip or jar archive
+	 */
+	static boolean isArchive(File file)
+	{
+		if (file == null)
+		{
+			return false;
 		}
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".zip") || name.endsWith(".jar");
+	}
 	
-		outputFile.createNewFile();
-		FileOutputStream out = new FileOutputStream(outputFile);
-		out.write(output.getBytes());
-		out.close();
+	CompilationUnit parse(InputStream in) throws ParseException
+	{
+		return JavaParser.parse(in, encoding);
 	}
 	
 	/**
-	 * Compile a Java String to an AS3 String.
+	 * Parse a source read by SourceReader, or load it from the parse cache if it
+	 * was parsed before.
 	 * 
-	 * @param inputJava
-	 * @return
+	 * @param source the content of the source file
+	 * @return a CompilationUnit of its own, safe to mutate
 	 * @throws ParseException
 	 */
-	public String compileString(String inputJava) throws ParseException
+	CompilationUnit parse(ByteBuffer source) throws ParseException
 	{
-		CompilationUnit cu = null;
-		cu = JavaParser.parse(new ByteArrayInputStream(inputJava.getBytes()));
-		
-		AS3MutationVisitor as3Mut = new AS3MutationVisitor();
-		if (includeDefaultMutations)
+		ParseCache cache = parseCache();
+		if (cache == null)
+		{
+			return parse(SourceReader.stream(source));
+		}
+		String hash = CompileManifest.hash(source);
+		CompilationUnit cu = cache.get(hash);
+		if (cu == null)
+		{
+			cu = parse(SourceReader.stream(source));
+			cache.put(hash, cu);
+		}
+		return cu;
+	}
+	
+	/**
+	 * Get the parse cache for the current options, opening it on first use.
+	 * 
+	 * @return the parse cache, or null if it is off
+	 */
+	synchronized ParseCache parseCache()
+	{
+		if (parseCacheDir == null)
 		{
-			as3Mut.includeDefaults();
+			return null;
+		}
+		String charset = encoding == null ? Charset.defaultCharset().name() : Charset.forName(encoding).name();
+		if (parseCache == null || !parseCache.getDir().equals(parseCacheDir) || parseCache.getMaxSize() != parseCacheSize
+				|| !parseCache.getEncoding().equals(charset))
+		{
+			parseCache = new ParseCache(parseCacheDir, parseCacheSize, encoding);
+		}
+		return parseCache;
+	}
+	
+	/**
+	 * Mutate a CompilationUnit with a new visitor on the shared, frozen options.
+	 * Does nothing in fused mode, the dump visitor mutates while it writes.
+	 * 
+	 * @param cu the CompilationUnit
+	 * @param config the options from mutationConfig()
+	 * @param diag the diagnostics of the file
+	 */
+	void mutate(CompilationUnit cu, MutationConfig config, Diagnostics diag)
+	{
+		if (fused)
+		{
+			return;
+		}
+		AS3MutationVisitor as3Mut = new AS3MutationVisitor(config);
+		as3Mut.setDiagnostics(diag);
+		as3Mut.visit(cu, null);
+	}
+	
+	/**
+	 * Create the visitor that dumps a mutated CompilationUnit, or in fused mode
+	 * mutates and dumps it in one pass.
+	 * 
+	 * @param out the Writer to dump to, null to dump to a String
+	 * @param config the options from mutationConfig()
+	 * @param diag the diagnostics of the file
+	 * @return the dump visitor
+	 */
+	AS3DumpVisitor dumpVisitor(Writer out, MutationConfig config, Diagnostics diag)
+	{
+		AS3DumpVisitor as3;
+		if (out == null)
+		{
+			as3 = fused ? new AS3FusedVisitor(config) : new AS3DumpVisitor();
+		}
+		else
+		{
+			as3 = fused ? new AS3FusedVisitor(config, out) : new AS3DumpVisitor(out);
+		}
+		as3.setDiagnostics(diag);
+		as3.setOutputProfile(outputProfile);
+		return as3;
+	}
+	
+	/**
+	 * Start collecting the diagnostics of a file.
+	 * 
+	 * @param source the file name, or null for a String
+	 * @return a collector for the configured mode
+	 */
+	Diagnostics newDiagnostics(String source)
+	{
+		if (diagnosticsMode == Diagnostics.Mode.OFF)
+		{
+			return Diagnostics.DISABLED;
+		}
+		Diagnostics diag = new Diagnostics(diagnosticsMode);
+		diag.setSource(source);
+		return diag;
+	}
+	
+	/**
+	 * Log the summary of a finished file and add it to the totals.
+	 * 
+	 * @param diag the diagnostics of the file
+	 */
+	void finishDiagnostics(Diagnostics diag)
+	{
+		if (diag.getSource() != null)
+		{
+			diag.logSummary(logger, diag.getSource());
+		}
+		diagnostics.add(diag);
+	}
+	
+	/**
+	 * Start the source map of an AS3 file, if source maps are on.
+	 * 
+	 * @param outputFile the AS3 file
+	 * @param source the path of the Java source
+	 * @return an empty source map, or null
+	 */
+	SourceMap newSourceMap(File outputFile, String source)
+	{
+		if (!sourceMaps)
+		{
+			return null;
+		}
+		return new SourceMap(outputFile.getName(), source.replace(File.separatorChar, '/'));
+	}
+	
+	/**
+	 * Write the source map of an AS3 file next to it. Like the AS3 file, it is only
+	 * touched when it changed.
+	 * 
+	 * @param map the source map, or null to do nothing
+	 * @param outputFile the AS3 file
+	 * @throws IOException
+	 */
+	void writeSourceMap(SourceMap map, File outputFile) throws IOException
+	{
+		if (map == null)
+		{
+			return;
+		}
+		ChangedOutputStream changes = new ChangedOutputStream(new File(outputFile.getPath() + ".map"));
+		try
+		{
+			Writer out = openWriter(changes);
+			map.write(out);
+			out.close();
+		}
+		finally
+		{
+			changes.discard();
+		}
+	}
+	
+	/**
+	 * Dump the mutated CompilationUnit to an AS3 file.
+	 * 
+	 * @param cu the mutated CompilationUnit
+	 * @param outputFile the AS3 file
+	 * @param source the path of the Java source, for the source map
+	 * @param config the options from mutationConfig()
+	 * @param diag the diagnostics of the file
+	 * @throws IOException
+	 */
+	private void writeOutput(CompilationUnit cu, File outputFile, String source, MutationConfig config, Diagnostics diag) throws IOException
+	{
+		SourceMap map = newSourceMap(outputFile, source);
+		// only touch the output when the generated code changed
+		ChangedOutputStream changes = new ChangedOutputStream(outputFile);
+		try
+		{
+			Writer out = openWriter(changes);
+			AS3DumpVisitor as3 = dumpVisitor(out, config, diag);
+			as3.setSourceMap(map);
+			as3.visit(cu, null);
+			as3.flush();
+			out.close();
+		}
+		finally
+		{
+			changes.discard();
+		}
+		countOutput(changes, outputFile);
+		writeSourceMap(map, outputFile);
+	}
+	
+	/**
+	 * Write AS3 code that was already dumped to a buffer.
+	 * 
+	 * @param code the encoded AS3 code
+	 * @param outputFile the AS3 file
+	 * @throws IOException
+	 */
+	void writeOutput(ByteArrayOutputStream code, File outputFile) throws IOException
+	{
+		ChangedOutputStream changes = new ChangedOutputStream(outputFile);
+		try
+		{
+			code.writeTo(changes);
+			changes.close();
+		}
+		finally
+		{
+			changes.discard();
+		}
+		countOutput(changes, outputFile);
+	}
+	
+	private void countOutput(ChangedOutputStream changes, File outputFile)
+	{
+		if (changes.isChanged())
+		{
+			writtenCount.incrementAndGet();
+		}
+		else
+		{
+			logger.info(outputFile.getPath() + " is unchanged");
+			unchangedCount.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Open a Writer for generated code using the configured encoding.
+	 * 
+	 * @param out the stream to write to
+	 * @return the Writer
+	 * @throws UnsupportedEncodingException
+	 */
+	Writer openWriter(OutputStream out) throws UnsupportedEncodingException
+	{
+		if (encoding == null)
+		{
+			return new OutputStreamWriter(out);
+		}
+		return new OutputStreamWriter(out, encoding);
+	}
+	
+	/**
+	 * Get the AS3 file a Java input file is compiled to.
+	 * 
+	 * @param inputFile
+	 * @param outputDir output directory or file, may be null
+	 * @return the output file
+	 */
+	File outputFileFor(File inputFile, File outputDir)
+	{
+		// outputDir/File is optional
+		if (outputDir == null || outputDir.isDirectory())
+		{
+			String name = inputFile.getName().replace(".java", ".as");
+			return new File(outputDir, name);
+		}
+		return outputDir;
+	}
+	
+	/**
+	 * Compile a Java String to an AS3 String.
+	 * 
+	 * @param inputJava
+	 * @return
+	 * @throws ParseException
+	 */
+	public String compileString(String inputJava) throws ParseException
+	{
+		return compileString(inputJava, mutationConfig());
+	}
+	
+	/**
+	 * Compile many Java Strings to AS3 Strings on the given Executor. The mutation
+	 * options are prepared once and shared by the whole batch.
+	 * 
+	 * @param inputs the Java sources
+	 * @param executor runs the compilations, may run them on several threads
+	 * @return one Future per input, in input order. A failed compilation throws
+	 *         an ExecutionException from get() with the ParseException as its cause.
+	 */
+	public List<Future<String>> compileStrings(List<String> inputs, Executor executor)
+	{
+		return compileStrings(inputs, executor, null);
+	}
+	
+	/**
+	 * Compile many Java Strings to AS3 Strings on the given Executor, reporting
+	 * each result to a callback as soon as it is done.
+	 * 
+	 * @param inputs the Java sources
+	 * @param executor runs the compilations, may run them on several threads
+	 * @param callback receives each result or error, may be null
+	 * @return one Future per input, in input order.
+	 */
+	public List<Future<String>> compileStrings(List<String> inputs, Executor executor, final CompileCallback callback)
+	{
+		// the parser cached by JavaParser is static and can't be shared between threads
+		JavaParser.setCacheParser(false);
+		
+		final MutationConfig config = mutationConfig();
+		List<Future<String>> results = new ArrayList<Future<String>>(inputs.size());
+		for (int i = 0; i < inputs.size(); i++)
+		{
+			final int index = i;
+			final String input = inputs.get(i);
+			FutureTask<String> task = new FutureTask<String>(new Callable<String>()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					return compileString(input, config);
+				}
+			})
+			{
+				@Override
+				protected void done()
+				{
+					if (callback == null || isCancelled())
+					{
+						return;
+					}
+					try
+					{
+						callback.compiled(index, get());
+					}
+					catch (ExecutionException ee)
+					{
+						callback.failed(index, ee.getCause());
+					}
+					catch (InterruptedException ie)
+					{
+						// can't happen, the task is done
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			results.add(task);
+			executor.execute(task);
+		}
+		return results;
+	}
+	
+	private String compileString(String inputJava, MutationConfig config) throws ParseException
+	{
+		// the String is already decoded, pass it through an encoding every JRE supports
+		CompilationUnit cu = null;
+		cu = JavaParser.parse(new ByteArrayInputStream(inputJava.getBytes(STRING_CHARSET)), STRING_CHARSET.name());
+		
+		Diagnostics diag = newDiagnostics(null);
+		mutate(cu, config, diag);
+		
+		AS3DumpVisitor as3 = dumpVisitor(null, config, diag);
+		as3.ensureCapacity(inputJava.length());
+		as3.visit(cu, null);
+		String output = as3.toString();
+		finishDiagnostics(diag);
+		//logger.debug("Compilation output:\n" + output);
+		return output;
+	}
+	
+	/**
+	 * Get the default and configured mutation options, frozen, to create a visitor
+	 * per file from. They are built once and rebuilt only after optionsChanged(),
+	 * so a call costs a volatile read while the options stay the same.
+	 * 
+	 * @return the frozen mutation options
+	 */
+	MutationConfig mutationConfig()
+	{
+		MutationConfig config = mutationConfig;
+		if (config == null)
+		{
+			synchronized (this)
+			{
+				if (mutationConfig == null)
+				{
+					AS3MutationVisitor as3Mut = new AS3MutationVisitor();
+					if (includeDefaultMutations)
+					{
+						as3Mut.includeDefaults();
+					}
+					mergeMutationOptions(as3Mut);
+					mutationConfig = as3Mut.getConfig();
+				}
+				config = mutationConfig;
+			}
+		}
+		return config;
+	}
+	
+	/**
+	 * Drop the frozen mutation options and their fingerprint, an option changed or
+	 * may be changed through a map or list handed out by a getter. Waits for a
+	 * config being built, so the change is not lost.
+	 */
+	private synchronized void optionsChanged()
+	{
+		mutationConfig = null;
+		mutationFingerprint = null;
+	}
+	
+	private void mergeMutationOptions(AS3MutationVisitor as3Mut)
+	{
+		as3Mut.setForceSprite(forceSprite);
+		as3Mut.setForceMovieClip(forceMovieClip);
+		
+		if (packageToPackage != null && packageToPackage.size() > 0)
+		{
+			as3Mut.getPackageToPackage().putAll(packageToPackage);
+		}
+		if (classesToClasses != null && classesToClasses.size() > 0)
+		{
+			as3Mut.getClassesToClasses().putAll(classesToClasses);
+		}
+		if (importsToImports != null && importsToImports.size() > 0)
+		{
+			as3Mut.getImportsToImports().putAll(importsToImports);
+		}
+		if (importsToIgnore != null && importsToIgnore.size() > 0)
+		{
+			as3Mut.getImportsToIgnore().addAll(importsToIgnore);
+		}
+		if (forcedImports != null && forcedImports.size() > 0)
+		{
+			as3Mut.getForcedImports().addAll(forcedImports);
+		}
+		if (classesToArrays != null && classesToArrays.size() > 0)
+		{
+			as3Mut.getClassesToArrays().addAll(classesToArrays);
+		}
+		if (classesToDictionaries != null && classesToDictionaries.size() > 0)
+		{
+			as3Mut.getClassesToDictionaries().addAll(classesToDictionaries);
+		}
+		if (classesToVectors != null && classesToVectors.size() > 0)
+		{
+			as3Mut.getClassesToVectors().addAll(classesToVectors);
+		}
+		if (classesExtendArray != null && classesExtendArray.size() > 0)
+		{
+			as3Mut.getClassesExtendArray().addAll(classesExtendArray);
+		}
+		if (classesExtendDictionary != null && classesExtendDictionary.size() > 0)
+		{
+			as3Mut.getClassesExtendDictionary().addAll(classesExtendDictionary);
+		}
+		if (classesExtendVector != null && classesExtendVector.size() > 0)
+		{
+			as3Mut.getClassesExtendVector().addAll(classesExtendVector);
+		}
+		if (arrayClass != null && !arrayClass.isEmpty())
+		{
+			as3Mut.setArrayClass(arrayClass);
+		}
+		if (vectorClass != null && !vectorClass.isEmpty())
+		{
+			as3Mut.setVectorClass(vectorClass);
+		}
+		if (methodRewrites != null && methodRewrites.size() > 0)
+		{
+			as3Mut.getMethodRewrites().addAll(methodRewrites);
+		}
+		if (dictionaryClass != null && !dictionaryClass.isEmpty())
+		{
+			as3Mut.setDictionaryClass(dictionaryClass);
+		}
+	}
+
+	/**
+	 * Get the fingerprint of every option that changes the generated code. It is
+	 * built once and again only after optionsChanged().
+	 * 
+	 * @return the hex encoded fingerprint
+	 */
+	private synchronized String mutationFingerprint()
+	{
+		if (mutationFingerprint != null)
+		{
+			return mutationFingerprint;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(includeDefaultMutations).append('|');
+		sb.append(encoding).append('|');
+		sb.append(forceSprite).append('|');
+		sb.append(forceMovieClip).append('|');
+		sb.append(arrayClass).append('|');
+		sb.append(vectorClass).append('|');
+		sb.append(dictionaryClass).append('|');
+		// map iteration order is arbitrary, sort for a stable fingerprint
+		sb.append(packageToPackage == null ? null : new TreeMap<String,String>(packageToPackage)).append('|');
+		sb.append(classesToClasses == null ? null : new TreeMap<String,String>(classesToClasses)).append('|');
+		sb.append(importsToImports == null ? null : new TreeMap<String,String>(importsToImports)).append('|');
+		sb.append(importsToIgnore).append('|');
+		sb.append(forcedImports).append('|');
+		sb.append(classesToArrays).append('|');
+		sb.append(classesToDictionaries).append('|');
+		sb.append(classesToVectors).append('|');
+		sb.append(classesExtendArray).append('|');
+		sb.append(classesExtendDictionary).append('|');
+		sb.append(classesExtendVector).append('|');
+		sb.append(methodRewrites).append('|');
+		sb.append(outputProfile).append('|');
+		// not a mutation option, but the maps are only written for compiled files
+		sb.append(sourceMaps);
+		mutationFingerprint = CompileManifest.hash(sb.toString().getBytes(Charset.forName("UTF-8")));
+		return mutationFingerprint;
+	}
+
+	/**
+	 * Apply the command line flag at args[i] to this compiler. The flags are the ones
+	 * of main, except --watch.
+	 * 
+	 * @param args the command line
+	 * @param i the index of the flag
+	 * @return the index of the last argument the flag used, or -1 if args[i] is not
+	 *         a compiler flag
+	 * @throws IOException if the file of --config can't be read
+	 * @throws IllegalArgumentException for a bad value
+	 */
+	public int parseFlag(String[] args, int i) throws IOException
+	{
+		boolean hasValue = i + 1 < args.length;
+		if (args[i].equals("--threads") && hasValue)
+		{
+			setThreads(Integer.parseInt(args[i + 1]));
+		}
+		else if (args[i].equals("--encoding") && hasValue)
+		{
+			setEncoding(args[i + 1]);
+		}
+		else if (args[i].equals("--diagnostics") && hasValue)
+		{
+			setDiagnosticsMode(Diagnostics.Mode.valueOf(args[i + 1].toUpperCase()));
+		}
+		else if (args[i].equals("--profile") && hasValue)
+		{
+			setOutputProfile(OutputProfile.valueOf(args[i + 1].toUpperCase()));
+		}
+		else if (args[i].equals("--parse-cache") && hasValue)
+		{
+			setParseCacheDir(new File(args[i + 1]));
+		}
+		else if (args[i].equals("--config") && hasValue)
+		{
+			loadOptions(new File(args[i + 1]));
+		}
+		else if (args[i].equals("--incremental"))
+		{
+			setIncremental(true);
+			return i;
+		}
+		else if (args[i].equals("--pipeline"))
+		{
+			setPipeline(true);
+			return i;
+		}
+		else if (args[i].equals("--fused"))
+		{
+			setFused(true);
+			return i;
+		}
+		else if (args[i].equals("--source-maps"))
+		{
+			setSourceMaps(true);
+			return i;
+		}
+		else
+		{
+			return -1;
+		}
+		return i + 1;
+	}
+	
+	/**
+	 * Set options from a properties file, see {@link #setOptions(Properties)}.
+	 * 
+	 * @param file the properties file, ISO 8859-1 encoded
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException for an unknown option or a bad value
+	 */
+	public void loadOptions(File file) throws IOException
+	{
+		Properties options = new Properties();
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			options.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		setOptions(options);
+	}
+	
+	/**
+	 * Set options by name. The names are the ones listed above. Maps are written as
+	 * "from:to,from:to" and lists as "a,b", like the attributes of the Ant task, and
+	 * replace the current map or list. Options that are not given keep their values.
+	 * 
+	 * @param options the options
+	 * @throws IllegalArgumentException for an unknown option or a bad value
+	 */
+	public void setOptions(Properties options)
+	{
+		for (String name : options.stringPropertyNames())
+		{
+			String value = options.getProperty(name).trim();
+			if (name.equals("includeDefaultMutations"))
+			{
+				setIncludeDefaultMutations(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("threads"))
+			{
+				setThreads(Integer.parseInt(value));
+			}
+			else if (name.equals("incremental"))
+			{
+				setIncremental(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("encoding"))
+			{
+				setEncoding(value.isEmpty() ? null : value);
+			}
+			else if (name.equals("pipeline"))
+			{
+				setPipeline(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("pipelineQueueSize"))
+			{
+				setPipelineQueueSize(Integer.parseInt(value));
+			}
+			else if (name.equals("fused"))
+			{
+				setFused(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("diagnosticsMode"))
+			{
+				setDiagnosticsMode(Diagnostics.Mode.valueOf(value.toUpperCase()));
+			}
+			else if (name.equals("outputProfile"))
+			{
+				setOutputProfile(OutputProfile.valueOf(value.toUpperCase()));
+			}
+			else if (name.equals("sourceMaps"))
+			{
+				setSourceMaps(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("parseCacheDir"))
+			{
+				setParseCacheDir(value.isEmpty() ? null : new File(value));
+			}
+			else if (name.equals("parseCacheSize"))
+			{
+				setParseCacheSize(Long.parseLong(value));
+			}
+			else if (name.equals("forceSprite"))
+			{
+				setForceSprite(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("forceMovieClip"))
+			{
+				setForceMovieClip(Boolean.parseBoolean(value));
+			}
+			else if (name.equals("packageToPackage"))
+			{
+				setPackageToPackage(optionMap(name, value));
+			}
+			else if (name.equals("classesToClasses"))
+			{
+				setClassesToClasses(optionMap(name, value));
+			}
+			else if (name.equals("importsToImports"))
+			{
+				setImportsToImports(optionMap(name, value));
+			}
+			else if (name.equals("importsToIgnore"))
+			{
+				setImportsToIgnore(optionList(value));
+			}
+			else if (name.equals("forcedImports"))
+			{
+				setForcedImports(optionList(value));
+			}
+			else if (name.equals("classesToArrays"))
+			{
+				setClassesToArrays(optionList(value));
+			}
+			else if (name.equals("classesToDictionaries"))
+			{
+				setClassesToDictionaries(optionList(value));
+			}
+			else if (name.equals("classesToVectors"))
+			{
+				setClassesToVectors(optionList(value));
+			}
+			else if (name.equals("classesExtendArray"))
+			{
+				setClassesExtendArray(optionList(value));
+			}
+			else if (name.equals("classesExtendDictionary"))
+			{
+				setClassesExtendDictionary(optionList(value));
+			}
+			else if (name.equals("classesExtendVector"))
+			{
+				setClassesExtendVector(optionList(value));
+			}
+			else if (name.equals("arrayClass"))
+			{
+				setArrayClass(value);
+			}
+			else if (name.equals("dictionaryClass"))
+			{
+				setDictionaryClass(value);
+			}
+			else if (name.equals("vectorClass"))
+			{
+				setVectorClass(value);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
 		}
-		mergeMutationOptions(as3Mut);
-		as3Mut.visit(cu, null);
-		
-		AS3DumpVisitor as3 = new AS3DumpVisitor();
-		as3.visit(cu, null);
-		String output = as3.toString();
-		//logger.debug("Compilation output:\n" + output);
-		return output;
 	}
 	
-	private void mergeMutationOptions(AS3MutationVisitor as3Mut)
+	private static Map<String,String> optionMap(String name, String value)
 	{
-		as3Mut.setForceSprite(forceSprite);
-		as3Mut.setForceMovieClip(forceMovieClip);
-		
-		if (packageToPackage != null && packageToPackage.size() > 0)
-		{
-			as3Mut.getPackageToPackage().putAll(packageToPackage);
-		}
-		if (classesToClasses != null && classesToClasses.size() > 0)
-		{
-			as3Mut.getClassesToClasses().putAll(classesToClasses);
-		}
-		if (importsToImports != null && importsToImports.size() > 0)
-		{
-			as3Mut.getImportsToImports().putAll(importsToImports);
-		}
-		if (importsToIgnore != null && importsToIgnore.size() > 0)
-		{
-			as3Mut.getImportsToIgnore().addAll(importsToIgnore);
-		}
-		if (forcedImports != null && forcedImports.size() > 0)
-		{
-			as3Mut.getForcedImports().addAll(forcedImports);
-		}
-		if (classesToArrays != null && classesToArrays.size() > 0)
-		{
-			as3Mut.getClassesToArrays().addAll(classesToArrays);
-		}
-		if (classesToDictionaries != null && classesToDictionaries.size() > 0)
-		{
-			as3Mut.getClassesToDictionaries().addAll(classesToDictionaries);
-		}
-		if (classesToVectors != null && classesToVectors.size() > 0)
-		{
-			as3Mut.getClassesToVectors().addAll(classesToVectors);
-		}
-		if (classesExtendArray != null && classesExtendArray.size() > 0)
-		{
-			as3Mut.getClassesExtendArray().addAll(classesExtendArray);
-		}
-		if (classesExtendDictionary != null && classesExtendDictionary.size() > 0)
-		{
-			as3Mut.getClassesExtendDictionary().addAll(classesExtendDictionary);
-		}
-		if (classesExtendVector != null && classesExtendVector.size() > 0)
-		{
-			as3Mut.getClassesExtendVector().addAll(classesExtendVector);
-		}
-		if (arrayClass != null && !arrayClass.isEmpty())
-		{
-			as3Mut.setArrayClass(arrayClass);
-		}
-		if (vectorClass != null && !vectorClass.isEmpty())
+		// ordered, classesToClasses rules are applied in map order
+		Map<String,String> map = new LinkedHashMap<String,String>();
+		for (String entry : optionList(value))
 		{
-			as3Mut.setVectorClass(vectorClass);
+			int colon = entry.indexOf(':');
+			if (colon < 0)
+			{
+				throw new IllegalArgumentException("Option " + name + " needs from:to entries, not " + entry);
+			}
+			map.put(entry.substring(0, colon).trim(), entry.substring(colon + 1).trim());
 		}
-		if (dictionaryClass != null && !dictionaryClass.isEmpty())
+		return map;
+	}
+	
+	private static List<String> optionList(String value)
+	{
+		List<String> list = new ArrayList<String>();
+		for (String entry : value.split(","))
 		{
-			as3Mut.setDictionaryClass(dictionaryClass);
+			if (entry.trim().length() > 0)
+			{
+				list.add(entry.trim());
+			}
 		}
+		return list;
 	}
 
 	public static void main(String[] args) throws Exception
 	{
-		if (args.length < 1)
+		JavaToAS3Compiler me = new JavaToAS3Compiler();
+		boolean watch = false;
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			int last = me.parseFlag(args, i);
+			if (last >= 0)
+			{
+				i = last;
+			}
+			else if (args[i].equals("--watch"))
+			{
+				watch = true;
+			}
+			else
+			{
+				paths.add(args[i]);
+			}
+		}
+		
+		if (paths.size() < 1)
 		{
-			System.out.println("Usage: java JavaToAS3Compiler <input file or directory> [<output file or directory>]");
+			System.out.println("Usage: java JavaToAS3Compiler [--threads <n>] [--incremental] [--encoding <charset>] [--pipeline] [--fused] [--diagnostics off|summary|detail] [--profile standard|compact] [--source-maps] [--parse-cache <dir>] [--config <properties file>] [--watch] <input file, directory or archive> [<output file, directory or archive>]");
 			return;
 		}
 
-		JavaToAS3Compiler me = new JavaToAS3Compiler();
-		File inFile = new File(args[0]);
+		File inFile = new File(paths.get(0));
 		File outFile = null;
-		if (args.length == 2)
+		if (paths.size() == 2)
 		{
-			outFile = new File(args[1]);
+			outFile = new File(paths.get(1));
 		}
 		me.getFiles().put(inFile, outFile);
 		
-		me.compileAll();
+		if (watch)
+		{
+			SourceWatcher watcher = new SourceWatcher(me, me.getFiles());
+			watcher.snapshot();
+			try
+			{
+				me.compileAll();
+			}
+			catch (ParseException pe)
+			{
+				// keep watching, fixing the source recompiles it
+				me.logger.error("Parse Exception: " + pe.getMessage());
+			}
+			watcher.run();
+		}
+		else
+		{
+			me.compileAll();
+		}
 	}
 
 	/**
@@ -386,6 +1604,245 @@ public class JavaToAS3Compiler
 	public void setIncludeDefaultMutations(boolean includeDefaultMutations)
 	{
 		this.includeDefaultMutations = includeDefaultMutations;
+		optionsChanged();
+	}
+
+	/**
+	 * @return the threads
+	 */
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * @param threads the threads to set
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/**
+	 * @return the incremental
+	 */
+	public boolean isIncremental()
+	{
+		return incremental;
+	}
+
+	/**
+	 * @param incremental the incremental to set
+	 */
+	public void setIncremental(boolean incremental)
+	{
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return the encoding
+	 */
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	/**
+	 * @param encoding the encoding to set
+	 */
+	public void setEncoding(String encoding)
+	{
+		this.encoding = encoding;
+		optionsChanged();
+	}
+
+	/**
+	 * @return the pipeline
+	 */
+	public boolean isPipeline()
+	{
+		return pipeline;
+	}
+
+	/**
+	 * @param pipeline the pipeline to set
+	 */
+	public void setPipeline(boolean pipeline)
+	{
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * @return the pipelineQueueSize
+	 */
+	public int getPipelineQueueSize()
+	{
+		return pipelineQueueSize;
+	}
+
+	/**
+	 * @param pipelineQueueSize the pipelineQueueSize to set
+	 */
+	public void setPipelineQueueSize(int pipelineQueueSize)
+	{
+		this.pipelineQueueSize = pipelineQueueSize;
+	}
+
+	/**
+	 * @return the fused
+	 */
+	public boolean isFused()
+	{
+		return fused;
+	}
+
+	/**
+	 * @param fused the fused to set
+	 */
+	public void setFused(boolean fused)
+	{
+		this.fused = fused;
+	}
+
+	/**
+	 * @return the diagnosticsMode
+	 */
+	public Diagnostics.Mode getDiagnosticsMode()
+	{
+		return diagnosticsMode;
+	}
+
+	/**
+	 * @param diagnosticsMode the diagnosticsMode to set
+	 */
+	public void setDiagnosticsMode(Diagnostics.Mode diagnosticsMode)
+	{
+		this.diagnosticsMode = diagnosticsMode;
+	}
+
+	/**
+	 * @return the outputProfile
+	 */
+	public OutputProfile getOutputProfile()
+	{
+		return outputProfile;
+	}
+
+	/**
+	 * @param outputProfile the outputProfile to set
+	 */
+	public void setOutputProfile(OutputProfile outputProfile)
+	{
+		this.outputProfile = outputProfile;
+		optionsChanged();
+	}
+
+	/**
+	 * @return the sourceMaps
+	 */
+	public boolean isSourceMaps()
+	{
+		return sourceMaps;
+	}
+
+	/**
+	 * @param sourceMaps the sourceMaps to set
+	 */
+	public void setSourceMaps(boolean sourceMaps)
+	{
+		this.sourceMaps = sourceMaps;
+		optionsChanged();
+	}
+
+	/**
+	 * @return the parseCacheDir
+	 */
+	public File getParseCacheDir()
+	{
+		return parseCacheDir;
+	}
+
+	/**
+	 * @param parseCacheDir the parseCacheDir to set, null to turn the parse cache off
+	 */
+	public void setParseCacheDir(File parseCacheDir)
+	{
+		this.parseCacheDir = parseCacheDir;
+	}
+
+	/**
+	 * @return the parseCacheSize
+	 */
+	public long getParseCacheSize()
+	{
+		return parseCacheSize;
+	}
+
+	/**
+	 * @param parseCacheSize the parseCacheSize to set, in bytes
+	 */
+	public void setParseCacheSize(long parseCacheSize)
+	{
+		this.parseCacheSize = parseCacheSize;
+	}
+
+	/**
+	 * @return the parse cache used by this compiler, with its hit and miss
+	 *         counters, or null if it is off
+	 */
+	public ParseCache getParseCache()
+	{
+		return parseCache();
+	}
+
+	/**
+	 * @return the diagnostics totals since the last reset, counts per category
+	 */
+	public Diagnostics getDiagnostics()
+	{
+		return diagnostics;
+	}
+
+	/**
+	 * @return the cache of type name classifications for the current options, with
+	 *         its hit and miss counters. A new cache is started when an option changes.
+	 */
+	public TypeClassifier getTypeClassifier()
+	{
+		return mutationConfig().getClassifier();
+	}
+
+	/**
+	 * @return the pipeline used by the last pipelined compileAll, with its stage
+	 *         statistics, or null
+	 */
+	public CompilePipeline getLastPipeline()
+	{
+		return lastPipeline;
+	}
+
+	/**
+	 * @return the number of output files written since the last reset
+	 */
+	public int getWrittenCount()
+	{
+		return writtenCount.get();
+	}
+
+	/**
+	 * @return the number of output files left alone because their content was the same
+	 */
+	public int getUnchangedCount()
+	{
+		return unchangedCount.get();
+	}
+
+	/**
+	 * @return the number of sources skipped by an incremental compile
+	 */
+	public int getSkippedCount()
+	{
+		return skippedCount.get();
 	}
 
 	/**
@@ -393,6 +1850,7 @@ public class JavaToAS3Compiler
 	 */
 	public Map<String, String> getPackageToPackage()
 	{
+		optionsChanged();
 		return packageToPackage;
 	}
 
@@ -402,6 +1860,7 @@ public class JavaToAS3Compiler
 	public void setPackageToPackage(Map<String, String> packageToPackage)
 	{
 		this.packageToPackage = packageToPackage;
+		optionsChanged();
 	}
 
 	/**
@@ -409,6 +1868,7 @@ public class JavaToAS3Compiler
 	 */
 	public Map<String, String> getClassesToClasses()
 	{
+		optionsChanged();
 		return classesToClasses;
 	}
 
@@ -418,6 +1878,7 @@ public class JavaToAS3Compiler
 	public void setClassesToClasses(Map<String, String> classesToClasses)
 	{
 		this.classesToClasses = classesToClasses;
+		optionsChanged();
 	}
 
 	/**
@@ -425,6 +1886,7 @@ public class JavaToAS3Compiler
 	 */
 	public Map<String, String> getImportsToImports()
 	{
+		optionsChanged();
 		return importsToImports;
 	}
 
@@ -434,6 +1896,7 @@ public class JavaToAS3Compiler
 	public void setImportsToImports(Map<String, String> importsToImports)
 	{
 		this.importsToImports = importsToImports;
+		optionsChanged();
 	}
 
 	/**
@@ -441,6 +1904,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getImportsToIgnore()
 	{
+		optionsChanged();
 		return importsToIgnore;
 	}
 
@@ -450,6 +1914,7 @@ public class JavaToAS3Compiler
 	public void setImportsToIgnore(List<String> importsToIgnore)
 	{
 		this.importsToIgnore = importsToIgnore;
+		optionsChanged();
 	}
 
 	/**
@@ -457,6 +1922,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getForcedImports()
 	{
+		optionsChanged();
 		return forcedImports;
 	}
 
@@ -466,6 +1932,7 @@ public class JavaToAS3Compiler
 	public void setForcedImports(List<String> forcedImports)
 	{
 		this.forcedImports = forcedImports;
+		optionsChanged();
 	}
 
 	/**
@@ -473,6 +1940,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getClassesToArrays()
 	{
+		optionsChanged();
 		return classesToArrays;
 	}
 
@@ -482,6 +1950,7 @@ public class JavaToAS3Compiler
 	public void setClassesToArrays(List<String> classesToArrays)
 	{
 		this.classesToArrays = classesToArrays;
+		optionsChanged();
 	}
 
 	/**
@@ -489,6 +1958,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getClassesToDictionaries()
 	{
+		optionsChanged();
 		return classesToDictionaries;
 	}
 
@@ -498,6 +1968,7 @@ public class JavaToAS3Compiler
 	public void setClassesToDictionaries(List<String> classesToDictionaries)
 	{
 		this.classesToDictionaries = classesToDictionaries;
+		optionsChanged();
 	}
 
 	/**
@@ -505,6 +1976,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getClassesToVectors()
 	{
+		optionsChanged();
 		return classesToVectors;
 	}
 
@@ -514,6 +1986,7 @@ public class JavaToAS3Compiler
 	public void setClassesToVectors(List<String> classesToVectors) 
 	{
 		this.classesToVectors = classesToVectors;
+		optionsChanged();
 	}
 
 	/**
@@ -521,6 +1994,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getClassesExtendArray() 
 	{
+		optionsChanged();
 		return classesExtendArray;
 	}
 
@@ -530,6 +2004,7 @@ public class JavaToAS3Compiler
 	public void setClassesExtendArray(List<String> classesExtendArray) 
 	{
 		this.classesExtendArray = classesExtendArray;
+		optionsChanged();
 	}
 
 	/**
@@ -537,6 +2012,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getClassesExtendDictionary() 
 	{
+		optionsChanged();
 		return classesExtendDictionary;
 	}
 
@@ -546,6 +2022,7 @@ public class JavaToAS3Compiler
 	public void setClassesExtendDictionary(List<String> classesExtendDictionary) 
 	{
 		this.classesExtendDictionary = classesExtendDictionary;
+		optionsChanged();
 	}
 
 	/**
@@ -553,6 +2030,7 @@ public class JavaToAS3Compiler
 	 */
 	public List<String> getClassesExtendVector() 
 	{
+		optionsChanged();
 		return classesExtendVector;
 	}
 
@@ -562,6 +2040,7 @@ public class JavaToAS3Compiler
 	public void setClassesExtendVector(List<String> classesExtendVector) 
 	{
 		this.classesExtendVector = classesExtendVector;
+		optionsChanged();
 	}
 
 	/**
@@ -578,6 +2057,7 @@ public class JavaToAS3Compiler
 	public void setForceSprite(boolean forceSprite)
 	{
 		this.forceSprite = forceSprite;
+		optionsChanged();
 	}
 
 	/**
@@ -594,6 +2074,7 @@ public class JavaToAS3Compiler
 	public void setForceMovieClip(boolean forceMovieClip)
 	{
 		this.forceMovieClip = forceMovieClip;
+		optionsChanged();
 	}
 
 	/**
@@ -610,6 +2091,7 @@ public class JavaToAS3Compiler
 	public void setArrayClass(String arrayClass)
 	{
 		this.arrayClass = arrayClass;
+		optionsChanged();
 	}
 
 	/**
@@ -626,6 +2108,7 @@ public class JavaToAS3Compiler
 	public void setVectorClass(String vectorClass)
 	{
 		this.vectorClass = vectorClass;
+		optionsChanged();
 	}
 
 	/**
@@ -642,5 +2125,42 @@ public class JavaToAS3Compiler
 	public void setDictionaryClass(String dictionaryClass)
 	{
 		this.dictionaryClass = dictionaryClass;
+		optionsChanged();
+	}
+
+	/**
+	 * @return the extra method call rewrites, register rewrites here
+	 */
+	public MethodRewrites getMethodRewrites()
+	{
+		optionsChanged();
+		return methodRewrites;
+	}
+
+	/**
+	 * @param methodRewrites the methodRewrites to set
+	 */
+	public void setMethodRewrites(MethodRewrites methodRewrites)
+	{
+		this.methodRewrites = methodRewrites;
+		optionsChanged();
+	}
+
+	/**
+	 * A source file waiting to be compiled.
+	 */
+	static class CompileJob
+	{
+		final File input;
+		final File output;
+		final CompileManifest manifest;
+		String hash = null;
+		
+		private CompileJob(File input, File output, CompileManifest manifest)
+		{
+			this.input = input;
+			this.output = output;
+			this.manifest = manifest;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,531 @@
+package com.sojostudios.as3;
+
+import japa.parser.JavaParser;
+import japa.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps a configured JavaToAS3Compiler resident and accepts compile requests on a
+ * local socket, so editor integrations don't pay for JVM startup and Log4j
+ * initialization on every save.
+ *
+ * The protocol is line based, UTF-8 encoded. Each request line gets one response line.
+ *
+ * <pre>
+ * &lt;token&gt; compile &lt;input file or directory&gt;TAB&lt;output file or directory&gt;
+ *   -> ok &lt;millis&gt;
+ *   -> error &lt;millis&gt; &lt;message&gt;
+ * &lt;token&gt; ping
+ *   -> ok 0
+ * &lt;token&gt; shutdown
+ *   -> ok 0
+ * </pre>
+ *
+ * The socket only listens on the loopback interface, but any local user can
+ * connect to it. So at startup the daemon writes a random token to a file only its
+ * user can read, by default ~/.java-to-as3-daemon-&lt;port&gt;.token, and every
+ * request must start with it. A request without the right token is refused and
+ * its connection closed. Every compile request names its output, and if roots are
+ * set, only inputs and outputs inside one of them are compiled.
+ *
+ * The compiler is configured with the flags of JavaToAS3Compiler.main, including
+ * --config to load its options from a properties file. Each request is compiled on
+ * its own, so the batch options threads, incremental and pipeline are refused.
+ *
+ * At most maxConcurrent requests are compiled at the same time, others wait for a
+ * free slot. The reported time includes the wait.
+ *
+ * @see JavaToAS3Client
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class JavaToAS3Daemon
+{
+	public static final int DEFAULT_PORT = 9123;
+
+	static final Charset PROTOCOL_CHARSET = Charset.forName("UTF-8");
+
+	private final Logger logger = Logger.getLogger(getClass());
+
+	private JavaToAS3Compiler compiler = null;
+	private int port = DEFAULT_PORT;
+	private int maxConcurrent = Runtime.getRuntime().availableProcessors();
+	private File tokenFile = null;
+	private List<File> roots = new ArrayList<File>();
+
+	private byte[] token = null;
+
+	private Semaphore slots = null;
+	private ServerSocket server = null;
+	private ExecutorService connections = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param compiler the configured compiler to serve requests with.
+	 */
+	public JavaToAS3Daemon(JavaToAS3Compiler compiler)
+	{
+		this.compiler = compiler;
+	}
+
+	/**
+	 * Warm up the compiler and serve requests until a shutdown request comes in.
+	 *
+	 * @throws IOException
+	 */
+	public void run() throws IOException
+	{
+		if (compiler.getThreads() > 1 || compiler.isIncremental() || compiler.isPipeline())
+		{
+			throw new IllegalStateException("threads, incremental and pipeline only apply to compileAll, use maxConcurrent");
+		}
+		// requests are compiled concurrently, the parser cached by JavaParser is static
+		JavaParser.setCacheParser(false);
+		warmUp();
+
+		slots = new Semaphore(maxConcurrent, true);
+		connections = Executors.newCachedThreadPool();
+		server = new ServerSocket(port, 50, InetAddress.getByName(null));
+		File file = tokenFile != null ? tokenFile : defaultTokenFile(port);
+		try
+		{
+			writeToken(file);
+		}
+		catch (IOException ioe)
+		{
+			server.close();
+			throw ioe;
+		}
+		logger.info("Listening on " + server.getLocalSocketAddress() + ", " + maxConcurrent + " concurrent requests, token in " + file);
+		try
+		{
+			while (!server.isClosed())
+			{
+				final Socket socket;
+				try
+				{
+					socket = server.accept();
+				}
+				catch (SocketException se)
+				{
+					// closed by a shutdown request
+					break;
+				}
+				connections.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						serve(socket);
+					}
+				});
+			}
+		}
+		finally
+		{
+			connections.shutdown();
+			server.close();
+			file.delete();
+		}
+	}
+
+	/**
+	 * @param port the port of a daemon
+	 * @return the file a daemon on that port writes its token to by default
+	 */
+	public static File defaultTokenFile(int port)
+	{
+		return new File(System.getProperty("user.home"), ".java-to-as3-daemon-" + port + ".token");
+	}
+
+	/**
+	 * Make up a new token and write it to a file only this user can read. The file is
+	 * written in a new directory that only this user can enter, and moved into place
+	 * once it holds the token, so no one else can open it at any time.
+	 *
+	 * @param file the token file
+	 * @throws IOException if the file can't be made private, e.g. on Windows
+	 */
+	private void writeToken(File file) throws IOException
+	{
+		String value = randomHex();
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null)
+		{
+			dir.mkdirs();
+		}
+		File privateDir = new File(dir, "." + file.getName() + "." + randomHex());
+		if (!privateDir.mkdir())
+		{
+			throw new IOException("Can't create directory " + privateDir);
+		}
+		File tmp = new File(privateDir, file.getName());
+		try
+		{
+			if (!ownerOnly(privateDir) || !privateDir.setExecutable(false, false) || !privateDir.setExecutable(true, true))
+			{
+				throw new IOException("Can't make " + privateDir + " private to this user");
+			}
+			if (!tmp.createNewFile() || !ownerOnly(tmp))
+			{
+				throw new IOException("Can't create private file " + tmp);
+			}
+			OutputStream out = new FileOutputStream(tmp);
+			try
+			{
+				out.write(value.getBytes(PROTOCOL_CHARSET));
+			}
+			finally
+			{
+				out.close();
+			}
+			// a token left by a daemon that did not shut down is replaced
+			if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+			{
+				throw new IOException("Can't replace token file " + file);
+			}
+		}
+		finally
+		{
+			tmp.delete();
+			privateDir.delete();
+		}
+		token = value.getBytes(PROTOCOL_CHARSET);
+	}
+
+	/**
+	 * Take away all permissions of other users and leave read and write to the owner.
+	 *
+	 * @return false if the permissions can't be changed
+	 */
+	private static boolean ownerOnly(File file)
+	{
+		return file.setReadable(false, false) && file.setReadable(true, true)
+				&& file.setWritable(false, false) && file.setWritable(true, true);
+	}
+
+	/**
+	 * @return 128 random bits as hex digits
+	 */
+	private static String randomHex()
+	{
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder sb = new StringBuilder(32);
+		for (byte b : random)
+		{
+			sb.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Stop accepting requests. Requests that are being compiled still finish.
+	 */
+	public void shutdown()
+	{
+		try
+		{
+			if (server != null)
+			{
+				server.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			logger.warn("Error closing server socket: " + ioe.getMessage());
+		}
+	}
+
+	/**
+	 * Run a small class through the whole compiler once, so classes are loaded
+	 * and the default mutations are built before the first request.
+	 */
+	private void warmUp()
+	{
+		try
+		{
+			long start = System.currentTimeMillis();
+			compiler.compileString("package warmup; import java.util.List; public class WarmUp { private List<String> list; }");
+			logger.info("Warmed up in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (ParseException pe)
+		{
+			logger.warn("Warm up failed: " + pe.getMessage());
+		}
+	}
+
+	/**
+	 * Handle all requests of one connection.
+	 *
+	 * @param socket the client connection
+	 */
+	private void serve(Socket socket)
+	{
+		try
+		{
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), PROTOCOL_CHARSET));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), PROTOCOL_CHARSET);
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				int space = line.indexOf(' ');
+				if (space < 0 || !authorized(line.substring(0, space)))
+				{
+					logger.warn("Refused a request without a valid token");
+					out.write("error 0 not authorized\n");
+					out.flush();
+					break;
+				}
+				out.write(handle(line.substring(space + 1)));
+				out.write("\n");
+				out.flush();
+			}
+		}
+		catch (IOException ioe)
+		{
+			logger.warn("Connection error: " + ioe.getMessage());
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (IOException ioe)
+			{
+				// nothing left to do
+			}
+		}
+	}
+
+	/**
+	 * Compare a request token with the token of this daemon, in constant time.
+	 *
+	 * @param value the token sent with a request
+	 * @return true if it is the token of this daemon
+	 */
+	boolean authorized(String value)
+	{
+		return token != null && MessageDigest.isEqual(token, value.getBytes(PROTOCOL_CHARSET));
+	}
+
+	/**
+	 * @param file a requested input or output
+	 * @return true if there are no roots, or the file is inside one of them
+	 * @throws IOException
+	 */
+	boolean allowed(File file) throws IOException
+	{
+		if (roots.isEmpty())
+		{
+			return true;
+		}
+		String path = file.getCanonicalPath();
+		for (File root : roots)
+		{
+			String rootPath = root.getCanonicalPath();
+			if (path.equals(rootPath) || path.startsWith(rootPath.endsWith(File.separator) ? rootPath : rootPath + File.separator))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Handle a single request line, once its token is checked.
+	 *
+	 * @param request the request line, without the token
+	 * @return the response line
+	 */
+	String handle(String request)
+	{
+		if (request.equals("ping"))
+		{
+			return "ok 0";
+		}
+		if (request.equals("shutdown"))
+		{
+			logger.info("Shutdown requested");
+			shutdown();
+			return "ok 0";
+		}
+		if (!request.startsWith("compile "))
+		{
+			return "error 0 unknown request";
+		}
+
+		String[] paths = request.substring("compile ".length()).split("\t");
+		if (paths.length != 2 || paths[1].length() == 0)
+		{
+			// without one the output would go to the working directory of the daemon
+			return "error 0 no output given";
+		}
+		File input = new File(paths[0]);
+		File output = new File(paths[1]);
+
+		long start = System.nanoTime();
+		try
+		{
+			if (!allowed(input) || !allowed(output))
+			{
+				logger.warn("Refused to compile " + input + " to " + output + ", outside the roots");
+				return "error 0 path outside the daemon roots";
+			}
+			slots.acquire();
+			try
+			{
+				compiler.compile(input, output);
+			}
+			finally
+			{
+				slots.release();
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+			logger.info("Compiled " + input + " in " + millis + " ms");
+			return "ok " + millis;
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return "error " + ((System.nanoTime() - start) / 1000000) + " interrupted";
+		}
+		catch (Exception e)
+		{
+			long millis = (System.nanoTime() - start) / 1000000;
+			logger.warn("Failed to compile " + input + " in " + millis + " ms: " + e.getMessage());
+			return "error " + millis + " " + String.valueOf(e.getMessage()).replaceAll("[\r\n]+", " ");
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		JavaToAS3Compiler compiler = new JavaToAS3Compiler();
+		JavaToAS3Daemon me = new JavaToAS3Daemon(compiler);
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("--threads") || args[i].equals("--incremental") || args[i].equals("--pipeline"))
+			{
+				System.out.println(args[i] + " only applies to batch compiles, the daemon compiles each request on its own, see --max-concurrent");
+				return;
+			}
+			int last = compiler.parseFlag(args, i);
+			if (last >= 0)
+			{
+				i = last;
+			}
+			else if (args[i].equals("--port") && i + 1 < args.length)
+			{
+				me.setPort(Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("--max-concurrent") && i + 1 < args.length)
+			{
+				me.setMaxConcurrent(Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("--token-file") && i + 1 < args.length)
+			{
+				me.setTokenFile(new File(args[++i]));
+			}
+			else if (args[i].equals("--root") && i + 1 < args.length)
+			{
+				me.getRoots().add(new File(args[++i]));
+			}
+			else
+			{
+				System.out.println("Usage: java JavaToAS3Daemon [--port <port>] [--max-concurrent <n>] [--token-file <file>] [--root <dir>]... [compiler flags]");
+				System.out.println("Compiler flags: [--encoding <charset>] [--fused] [--diagnostics off|summary|detail] [--profile standard|compact] [--source-maps] [--parse-cache <dir>] [--config <properties file>]");
+				return;
+			}
+		}
+		me.run();
+	}
+
+	/**
+	 * @return the port
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+
+	/**
+	 * @param port the port to set
+	 */
+	public void setPort(int port)
+	{
+		this.port = port;
+	}
+
+	/**
+	 * @return the maxConcurrent
+	 */
+	public int getMaxConcurrent()
+	{
+		return maxConcurrent;
+	}
+
+	/**
+	 * @param maxConcurrent the maxConcurrent to set
+	 */
+	public void setMaxConcurrent(int maxConcurrent)
+	{
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * @return the tokenFile
+	 */
+	public File getTokenFile()
+	{
+		return tokenFile;
+	}
+
+	/**
+	 * @param tokenFile the file to write the token to, null for defaultTokenFile(port)
+	 */
+	public void setTokenFile(File tokenFile)
+	{
+		this.tokenFile = tokenFile;
+	}
+
+	/**
+	 * @return the directories requests may compile from and to, any if empty
+	 */
+	public List<File> getRoots()
+	{
+		return roots;
+	}
+
+	/**
+	 * @param roots the directories requests may compile from and to, any if empty
+	 */
+	public void setRoots(List<File> roots)
+	{
+		this.roots = roots;
+	}
+}
@@ -0,0 +1,349 @@
+package com.sojostudios.as3;
+
+import japa.parser.ast.CompilationUnit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps parsed CompilationUnits on disk, keyed by the content hash of their source,
+ * so a source that did not change is not parsed again when only the mutation options
+ * did. Each unit is stored in its own file in the cache directory, encoded by
+ * CompilationUnitCodec, which loads much faster than parsing.
+ *
+ * The cache is bounded by the total size of its files. When a new unit does not fit,
+ * the least recently used ones are deleted. A hit touches the file, so the order
+ * carries over to the next run. Entries written with another source encoding or
+ * format are treated as misses, damaged ones are deleted.
+ *
+ * It is safe to use from many threads, and a failing cache never fails a compile:
+ * the source is parsed as if the cache was not there.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class ParseCache
+{
+	public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+	private static final String SUFFIX = ".ast";
+	private static final String FORMAT = "java-to-as3 ast 1";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Logger logger = Logger.getLogger(getClass());
+
+	private final File dir;
+	private final long maxSize;
+	private final String encoding;
+	private final byte[] header;
+
+	// hash => size of the entry file, least recently used first
+	private Map<String,Long> entries = null;
+	private long size = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dir the cache directory, created when the first unit is stored
+	 * @param maxSize the most bytes kept in the directory
+	 * @param encoding the encoding the sources are parsed with, null for the
+	 *        platform encoding
+	 */
+	public ParseCache(File dir, long maxSize, String encoding)
+	{
+		this.dir = dir;
+		this.maxSize = maxSize;
+		this.encoding = encoding == null ? Charset.defaultCharset().name() : Charset.forName(encoding).name();
+		this.header = (FORMAT + "\n" + this.encoding + "\n").getBytes(UTF8);
+	}
+
+	/**
+	 * Get the unit parsed from a source before.
+	 *
+	 * @param hash the content hash of the source
+	 * @return a new copy of the unit, or null if it is not cached
+	 */
+	public CompilationUnit get(String hash)
+	{
+		File file = new File(dir, hash + SUFFIX);
+		synchronized (this)
+		{
+			// get, not containsKey, so the entry moves to the recently used end
+			if (index().get(hash) == null)
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+		try
+		{
+			ByteBuffer buffer = SourceReader.read(file);
+			byte[] data;
+			int offset = 0;
+			int length = buffer.remaining();
+			if (buffer.hasArray())
+			{
+				data = buffer.array();
+				offset = buffer.arrayOffset() + buffer.position();
+			}
+			else
+			{
+				// a mapped file
+				data = new byte[length];
+				buffer.get(data);
+			}
+			if (!startsWith(data, offset, length, header))
+			{
+				// another format or encoding, parse it again and let put replace it
+				misses.incrementAndGet();
+				return null;
+			}
+			CompilationUnit cu = CompilationUnitCodec.decode(data, offset + header.length, length - header.length);
+			file.setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			return cu;
+		}
+		catch (IOException e)
+		{
+			logger.warn("Dropping damaged parse cache entry " + file.getPath() + ": " + e.getMessage());
+			remove(hash);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Store a freshly parsed unit, before it is mutated. Evicts the least recently
+	 * used units if the cache would grow over its size.
+	 *
+	 * @param hash the content hash of the source
+	 * @param cu the parsed unit
+	 */
+	public void put(String hash, CompilationUnit cu)
+	{
+		File file = new File(dir, hash + SUFFIX);
+		File temp = null;
+		try
+		{
+			byte[] data = CompilationUnitCodec.encode(cu);
+			long length = header.length + data.length;
+			if (length > maxSize)
+			{
+				return;
+			}
+			dir.mkdirs();
+			temp = File.createTempFile(hash, ".tmp", dir);
+			OutputStream out = new FileOutputStream(temp);
+			try
+			{
+				out.write(header);
+				out.write(data);
+			}
+			finally
+			{
+				out.close();
+			}
+			synchronized (this)
+			{
+				Map<String,Long> index = index();
+				Long previous = index.remove(hash);
+				if (previous != null)
+				{
+					size -= previous;
+				}
+				file.delete();
+				if (!temp.renameTo(file))
+				{
+					throw new IOException("Can't rename " + temp.getPath() + " to " + file.getName());
+				}
+				temp = null;
+				index.put(hash, length);
+				size += length;
+				evict();
+			}
+		}
+		catch (IOException e)
+		{
+			logger.warn("Can't store " + file.getPath() + " in the parse cache: " + e.getMessage());
+		}
+		finally
+		{
+			if (temp != null)
+			{
+				temp.delete();
+			}
+		}
+	}
+
+	private synchronized void remove(String hash)
+	{
+		Long length = index().remove(hash);
+		if (length != null)
+		{
+			size -= length;
+		}
+		new File(dir, hash + SUFFIX).delete();
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache fits its size.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<String,Long>> i = entries.entrySet().iterator();
+		while (size > maxSize && i.hasNext())
+		{
+			Map.Entry<String,Long> eldest = i.next();
+			new File(dir, eldest.getKey() + SUFFIX).delete();
+			size -= eldest.getValue();
+			i.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Read the entries of the cache directory the first time it is used, oldest
+	 * first, and trim them to the size.
+	 */
+	private Map<String,Long> index()
+	{
+		if (entries == null)
+		{
+			entries = new LinkedHashMap<String,Long>(256, 0.75f, true);
+			File[] files = dir.listFiles();
+			if (files != null)
+			{
+				final Map<File,Long> modified = new HashMap<File,Long>();
+				for (File file : files)
+				{
+					modified.put(file, file.lastModified());
+				}
+				Arrays.sort(files, new Comparator<File>()
+				{
+					@Override
+					public int compare(File a, File b)
+					{
+						long diff = modified.get(a) - modified.get(b);
+						return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+					}
+				});
+				for (File file : files)
+				{
+					String name = file.getName();
+					if (file.isFile() && name.endsWith(SUFFIX))
+					{
+						entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+						size += file.length();
+					}
+				}
+			}
+			evict();
+		}
+		return entries;
+	}
+
+	private static boolean startsWith(byte[] data, int offset, int length, byte[] prefix)
+	{
+		if (length < prefix.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++)
+		{
+			if (data[offset + i] != prefix[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the cache directory
+	 */
+	public File getDir()
+	{
+		return dir;
+	}
+
+	/**
+	 * @return the canonical name of the source encoding
+	 */
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	/**
+	 * @return the most bytes kept in the directory
+	 */
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * @return the bytes in the directory
+	 */
+	public synchronized long getSize()
+	{
+		index();
+		return size;
+	}
+
+	/**
+	 * @return the number of cached units
+	 */
+	public synchronized int getCount()
+	{
+		return index().size();
+	}
+
+	/**
+	 * @return the number of units loaded from the cache
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of units that had to be parsed
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of units deleted to make room
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getCount() + " units, " + getSize() / 1024 + " KB, " + getHits() + " hits, " + getMisses() + " misses, "
+				+ getEvictions() + " evicted";
+	}
+}
@@ -0,0 +1,256 @@
+package com.sojostudios.as3;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sojostudios.as3.visitors.SourceMap;
+
+/**
+ * Points AS3 file positions back to the Java source, using the source maps the
+ * compiler writes with the sourceMaps option. Profiler hotspots and stack traces
+ * name positions like "com/foo/Bar.as:123", which {@link #rewrite(String)} turns
+ * into "com/foo/Bar.java:45".
+ *
+ * Run it with the AS3 output directories as arguments to rewrite standard input to
+ * standard output:
+ * <pre>
+ * java com.sojostudios.as3.SourceMapLookup as3-out &lt; profile.txt
+ * </pre>
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class SourceMapLookup
+{
+	private static final Pattern POSITION = Pattern.compile("([\\w$.\\-/\\\\:]*?)([\\w$]+\\.as):(\\d+)");
+
+	// AS3 file name => maps of the AS3 files with that name, with their relative paths
+	private Map<String,List<Entry>> maps = new HashMap<String,List<Entry>>();
+	private String encoding = null;
+
+	/**
+	 * Load the maps of all AS3 files below a directory.
+	 *
+	 * @param dir an AS3 output directory
+	 * @throws IOException
+	 */
+	public void addDirectory(File dir) throws IOException
+	{
+		addDirectory(dir, "");
+	}
+
+	private void addDirectory(File dir, String path) throws IOException
+	{
+		File[] files = dir.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			if (file.isDirectory())
+			{
+				addDirectory(file, path + file.getName() + "/");
+			}
+			else if (file.getName().endsWith(".as.map"))
+			{
+				add(path + file.getName().substring(0, file.getName().length() - ".map".length()), file);
+			}
+		}
+	}
+
+	/**
+	 * Load the map of one AS3 file.
+	 *
+	 * @param as3Path the path of the AS3 file, relative to the output directory
+	 * @param mapFile its source map
+	 * @throws IOException
+	 */
+	public void add(String as3Path, File mapFile) throws IOException
+	{
+		FileInputStream in = new FileInputStream(mapFile);
+		try
+		{
+			Reader reader = encoding == null ? new InputStreamReader(in) : new InputStreamReader(in, encoding);
+			add(as3Path, SourceMap.read(reader));
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Add the map of one AS3 file.
+	 *
+	 * @param as3Path the path of the AS3 file, relative to the output directory
+	 * @param map its source map
+	 */
+	public void add(String as3Path, SourceMap map)
+	{
+		String name = as3Path.substring(as3Path.lastIndexOf('/') + 1);
+		List<Entry> entries = maps.get(name);
+		if (entries == null)
+		{
+			entries = new ArrayList<Entry>(1);
+			maps.put(name, entries);
+		}
+		entries.add(new Entry(as3Path, map));
+	}
+
+	/**
+	 * Find the map of an AS3 file. Files with the same name in different packages
+	 * are told apart by the directories in the path.
+	 *
+	 * @param as3Path the AS3 file, as a profiler names it, absolute or relative
+	 * @return its map, or null if none was loaded
+	 */
+	public SourceMap getSourceMap(String as3Path)
+	{
+		String path = as3Path.replace('\\', '/');
+		List<Entry> entries = maps.get(path.substring(path.lastIndexOf('/') + 1));
+		if (entries == null)
+		{
+			return null;
+		}
+		for (Entry entry : entries)
+		{
+			if (path.equals(entry.path) || path.endsWith("/" + entry.path) || entry.path.endsWith("/" + path))
+			{
+				return entry.map;
+			}
+		}
+		return entries.get(0).map;
+	}
+
+	/**
+	 * Find the Java position of an AS3 line.
+	 *
+	 * @param as3Path the AS3 file, as a profiler names it
+	 * @param as3Line the line, from 1
+	 * @return the Java source and line, like "com/foo/Bar.java:45", or null if
+	 *         the file or line is not mapped
+	 */
+	public String lookup(String as3Path, int as3Line)
+	{
+		SourceMap map = getSourceMap(as3Path);
+		if (map == null)
+		{
+			return null;
+		}
+		int javaLine = map.getJavaLine(as3Line);
+		if (javaLine <= 0)
+		{
+			return null;
+		}
+		return map.getSource() + ":" + javaLine;
+	}
+
+	/**
+	 * Replace every mapped AS3 position in a line of text by its Java position.
+	 * Positions that are not mapped are left alone.
+	 *
+	 * @param text a line of profiler output or a stack trace
+	 * @return the rewritten text
+	 */
+	public String rewrite(String text)
+	{
+		if (text.indexOf(".as:") < 0)
+		{
+			return text;
+		}
+		Matcher m = POSITION.matcher(text);
+		StringBuffer sb = null;
+		while (m.find())
+		{
+			String java = lookup(m.group(1) + m.group(2), Integer.parseInt(m.group(3)));
+			if (java != null)
+			{
+				if (sb == null)
+				{
+					sb = new StringBuffer(text.length() + 16);
+				}
+				m.appendReplacement(sb, Matcher.quoteReplacement(java));
+			}
+		}
+		if (sb == null)
+		{
+			return text;
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the number of source maps loaded
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (List<Entry> entries : maps.values())
+		{
+			size += entries.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the encoding
+	 */
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	/**
+	 * @param encoding the encoding of the map files, the platform encoding if null
+	 */
+	public void setEncoding(String encoding)
+	{
+		this.encoding = encoding;
+	}
+
+	private static class Entry
+	{
+		private final String path;
+		private final SourceMap map;
+
+		private Entry(String path, SourceMap map)
+		{
+			this.path = path;
+			this.map = map;
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: java SourceMapLookup <AS3 output directory>... < profiler output");
+			return;
+		}
+		SourceMapLookup lookup = new SourceMapLookup();
+		for (String arg : args)
+		{
+			lookup.addDirectory(new File(arg));
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		PrintStream out = System.out;
+		for (String line = in.readLine(); line != null; line = in.readLine())
+		{
+			out.println(lookup.rewrite(line));
+		}
+		out.flush();
+	}
+}
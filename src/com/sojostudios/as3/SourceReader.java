@@ -0,0 +1,104 @@
+package com.sojostudios.as3;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads source files in one bulk NIO read instead of streaming them through the
+ * parser. Large files are memory mapped.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class SourceReader
+{
+	/**
+	 * Files larger than this are mapped instead of copied to the heap.
+	 */
+	public static final long MAP_THRESHOLD = 1024 * 1024;
+
+	private SourceReader()
+	{
+
+	}
+
+	/**
+	 * Read the whole content of a file.
+	 *
+	 * @param file the file
+	 * @return a buffer positioned at the start of the content
+	 * @throws IOException
+	 */
+	public static ByteBuffer read(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > MAP_THRESHOLD)
+			{
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) < 0)
+				{
+					throw new EOFException("File " + file + " shrank while reading");
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Wrap a buffer returned by {@link #read(File)} for the parser.
+	 *
+	 * @param buffer the buffer
+	 * @return a stream over the remaining content of the buffer
+	 */
+	public static InputStream stream(final ByteBuffer buffer)
+	{
+		return new InputStream()
+		{
+			@Override
+			public int read()
+			{
+				return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len)
+			{
+				if (len == 0)
+				{
+					return 0;
+				}
+				if (!buffer.hasRemaining())
+				{
+					return -1;
+				}
+				int count = Math.min(len, buffer.remaining());
+				buffer.get(b, off, count);
+				return count;
+			}
+
+			@Override
+			public int available()
+			{
+				return buffer.remaining();
+			}
+		};
+	}
+}
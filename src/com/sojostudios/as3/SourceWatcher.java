@@ -0,0 +1,249 @@
+package com.sojostudios.as3;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Watches the inputs of a compiler File map and recompiles single sources as they
+ * change. Removing a .java file removes its .as output.
+ *
+ * Java 6 has no file system notification API, so the watched directories are polled.
+ * A poll only lists directories and reads file sizes and modification times, which is
+ * far cheaper than translating the tree again. A changed file is compiled once it has
+ * been quiet for the debounce time, so rapid saves result in one compilation.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class SourceWatcher
+{
+	private final Logger logger = Logger.getLogger(getClass());
+
+	private JavaToAS3Compiler compiler = null;
+	private Map<File,File> files = null;
+	private long interval = 500;
+	private long debounce = 300;
+
+	private Map<File,Stamp> known = new HashMap<File,Stamp>();
+	private Map<File,Long> pending = new HashMap<File,Long>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param compiler the configured compiler
+	 * @param files map of input files or directories to output files or directories,
+	 *        same as the compiler File map.
+	 */
+	public SourceWatcher(JavaToAS3Compiler compiler, Map<File,File> files)
+	{
+		this.compiler = compiler;
+		this.files = files;
+	}
+
+	/**
+	 * Record the current state of the inputs. Changes after this call are picked up
+	 * by {@link #run()}, including changes made while an initial compile runs.
+	 */
+	public void snapshot()
+	{
+		known.clear();
+		for (File input : files.keySet())
+		{
+			scan(input, files.get(input), known);
+		}
+	}
+
+	/**
+	 * Poll until the thread is interrupted.
+	 */
+	public void run()
+	{
+		logger.info("Watching " + known.size() + " sources");
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				Thread.sleep(interval);
+				poll();
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Look for changes once and compile the sources that settled.
+	 */
+	public void poll()
+	{
+		Map<File,Stamp> current = new HashMap<File,Stamp>();
+		for (File input : files.keySet())
+		{
+			scan(input, files.get(input), current);
+		}
+
+		long now = System.currentTimeMillis();
+		for (Map.Entry<File,Stamp> entry : current.entrySet())
+		{
+			Stamp before = known.get(entry.getKey());
+			if (before == null || !before.equals(entry.getValue()))
+			{
+				// wait for the file to be quiet again
+				pending.put(entry.getKey(), now);
+			}
+		}
+		for (Map.Entry<File,Stamp> entry : known.entrySet())
+		{
+			if (!current.containsKey(entry.getKey()))
+			{
+				pending.remove(entry.getKey());
+				remove(entry.getKey(), entry.getValue().output);
+			}
+		}
+		known = current;
+
+		for (Iterator<Map.Entry<File,Long>> i = pending.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry<File,Long> entry = i.next();
+			if (now - entry.getValue() >= debounce)
+			{
+				i.remove();
+				compile(entry.getKey(), current.get(entry.getKey()));
+			}
+		}
+	}
+
+	private void compile(File source, Stamp stamp)
+	{
+		long start = System.currentTimeMillis();
+		try
+		{
+			// a new package directory may not have an output directory yet
+			if (stamp.inDirectory && stamp.output != null)
+			{
+				stamp.output.mkdirs();
+			}
+			compiler.compile(source, stamp.output);
+			logger.info("Recompiled " + source.getPath() + " in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (Exception e)
+		{
+			// keep watching, the next save may fix it
+			logger.error("Failed to compile " + source.getPath() + ": " + e.getMessage());
+		}
+	}
+
+	private void remove(File source, File outputDir)
+	{
+		File output = compiler.outputFileFor(source, outputDir);
+		if (output.delete())
+		{
+			logger.info("Removed " + output.getPath());
+		}
+	}
+
+	/**
+	 * Collect the .java files of an input, with the output each one compiles to.
+	 * Output directories are derived the same way compileAll derives them.
+	 */
+	private void scan(File input, File output, Map<File,Stamp> into)
+	{
+		if (input.isDirectory())
+		{
+			File[] children = input.listFiles();
+			if (children == null)
+			{
+				return;
+			}
+			for (File file : children)
+			{
+				if (file.isDirectory())
+				{
+					scan(file, new File(output, file.getName()), into);
+				}
+				else if (file.getName().endsWith(".java"))
+				{
+					into.put(file, new Stamp(file, output, true));
+				}
+			}
+		}
+		else if (input.isFile())
+		{
+			into.put(input, new Stamp(input, output, false));
+		}
+	}
+
+	/**
+	 * @return the interval
+	 */
+	public long getInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * @param interval the poll interval in milliseconds
+	 */
+	public void setInterval(long interval)
+	{
+		this.interval = interval;
+	}
+
+	/**
+	 * @return the debounce
+	 */
+	public long getDebounce()
+	{
+		return debounce;
+	}
+
+	/**
+	 * @param debounce how long a changed file has to stay unchanged before it is compiled, in milliseconds
+	 */
+	public void setDebounce(long debounce)
+	{
+		this.debounce = debounce;
+	}
+
+	/**
+	 * Size and modification time of a source, plus where it compiles to.
+	 */
+	private static class Stamp
+	{
+		private final long modified;
+		private final long length;
+		private final File output;
+		private final boolean inDirectory;
+
+		private Stamp(File file, File output, boolean inDirectory)
+		{
+			this.modified = file.lastModified();
+			this.length = file.length();
+			this.output = output;
+			this.inDirectory = inDirectory;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Stamp))
+			{
+				return false;
+			}
+			Stamp other = (Stamp)o;
+			return modified == other.modified && length == other.length;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int)(modified ^ length);
+		}
+	}
+}
@@ -16,6 +16,7 @@ import org.apache.tools.ant.Task;
 
 import com.sojostudios.as3.JavaToAS3Compiler;
 import com.sojostudios.as3.ant.types.SourceTarget;
+import com.sojostudios.as3.visitors.OutputProfile;
 
 /**
  * Task to use the JavaToAS3Compiler.
@@ -28,6 +29,9 @@ import com.sojostudios.as3.ant.types.SourceTarget;
  *     </javaToAs3>
  * </pre>
  * 
+ * Property profile selects the layout of the AS3 code, standard or compact (see
+ * OutputProfile). It can be overridden per sourceTarget like the other options.
+ * 
  * Property loglevel can also be set to OFF|ALL|DEBUG|INFO|WARN|ERROR|FATAL to
  * configure Log4j for the com.sojostudios.as3 package.
  * 
@@ -41,6 +45,8 @@ public class JavaToAS3Task extends Task
 	private List<SourceTarget> targets = new ArrayList<SourceTarget>();
 	
 	private String logLevel = null;
+	private String encoding = null;
+	private String profile = null;
 	
 	private boolean includeDefaultMutations = true;
 	private boolean forceMovieClip = false;
@@ -92,6 +98,7 @@ public class JavaToAS3Task extends Task
 				//ioe.printStackTrace();
 			}
 		}
+		log("Compiled " + targets.size() + " files: " + me.getWrittenCount() + " written, " + me.getUnchangedCount() + " unchanged");
 	}
 	
 	/**
@@ -139,6 +146,8 @@ public class JavaToAS3Task extends Task
 	private void resetCompileOptions(JavaToAS3Compiler me)
 	{
 		me.setIncludeDefaultMutations(includeDefaultMutations);
+		me.setEncoding(encoding);
+		me.setOutputProfile(parseProfile(profile));
 		me.setForceSprite(forceSprite);
 		me.setForceMovieClip(forceMovieClip);
 		me.setPackageToPackage(generateMap(packageToPackage));
@@ -164,6 +173,14 @@ public class JavaToAS3Task extends Task
 		{
 			me.setIncludeDefaultMutations(Boolean.parseBoolean(ops.get("includedefaultmutations")));
 		}
+		if (ops.containsKey("encoding"))
+		{
+			me.setEncoding(ops.get("encoding"));
+		}
+		if (ops.containsKey("profile"))
+		{
+			me.setOutputProfile(parseProfile(ops.get("profile")));
+		}
 		if (ops.containsKey("forcesprite"))
 		{
 			me.setForceSprite(Boolean.parseBoolean(ops.get("forcesprite")));
@@ -185,6 +202,22 @@ public class JavaToAS3Task extends Task
 		me.getClassesExtendVector().addAll(generateList(ops.get("classesextendvector")));
 	}
 	
+	private OutputProfile parseProfile(String input)
+	{
+		if (input == null || input.isEmpty())
+		{
+			return OutputProfile.STANDARD;
+		}
+		try
+		{
+			return OutputProfile.valueOf(input.toUpperCase());
+		}
+		catch(IllegalArgumentException iae)
+		{
+			throw new BuildException("Unknown profile '" + input + "', use standard or compact");
+		}
+	}
+	
 	private Map<String,String> generateMap(String input)
 	{
 		Map<String,String> map = new HashMap<String,String>();
@@ -416,6 +449,38 @@ public class JavaToAS3Task extends Task
 		this.logLevel = logLevel;
 	}
 	
+	/**
+	 * @return the encoding
+	 */
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	/**
+	 * @param encoding the encoding to set
+	 */
+	public void setEncoding(String encoding)
+	{
+		this.encoding = encoding;
+	}
+	
+	/**
+	 * @return the profile
+	 */
+	public String getProfile()
+	{
+		return profile;
+	}
+
+	/**
+	 * @param profile the profile to set, standard or compact
+	 */
+	public void setProfile(String profile)
+	{
+		this.profile = profile;
+	}
+	
 	/**
 	 * @return the classesExtendArray
 	 */
@@ -4,6 +4,7 @@ import japa.parser.ast.BlockComment;
 import japa.parser.ast.CompilationUnit;
 import japa.parser.ast.ImportDeclaration;
 import japa.parser.ast.LineComment;
+import japa.parser.ast.Node;
 import japa.parser.ast.PackageDeclaration;
 import japa.parser.ast.TypeParameter;
 import japa.parser.ast.body.AnnotationDeclaration;
@@ -88,10 +89,12 @@ import japa.parser.ast.type.VoidType;
 import japa.parser.ast.type.WildcardType;
 import japa.parser.ast.visitor.VoidVisitor;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 
-import org.apache.log4j.Logger;
+import com.sojostudios.as3.visitors.Diagnostics.Category;
 
 /**
  * This class dumps the AST for the CompilationUnit to a String using
@@ -102,11 +105,46 @@ import org.apache.log4j.Logger;
  */
 public class AS3DumpVisitor implements VoidVisitor<Object>
 {
-	private Logger logger = Logger.getLogger(getClass());
-	private IndentedPrinter printer = new IndentedPrinter();
+	private Diagnostics diagnostics = new Diagnostics(Diagnostics.Mode.SUMMARY);
+	private IndentedPrinter printer;
+	private SourceMap sourceMap = null;
+	private OutputProfile profile = OutputProfile.STANDARD;
 	
 	public AS3DumpVisitor()
 	{
+		printer = new IndentedPrinter();
+	}
+	
+	/**
+	 * Dump straight to a Writer instead of building the output in memory.
+	 * Call {@link #flush()} after visiting.
+	 * 
+	 * @param out the Writer
+	 */
+	public AS3DumpVisitor(Writer out)
+	{
+		printer = new IndentedPrinter(out);
+	}
+	
+	/**
+	 * Make room in the output for a compilation unit about to be dumped. The AS3
+	 * code comes out about as long as the Java source.
+	 * 
+	 * @param sourceLength the length of the Java source, in chars
+	 */
+	public void ensureCapacity(int sourceLength)
+	{
+		printer.ensureCapacity(sourceLength);
+	}
+	
+	/**
+	 * Write any remaining output to the Writer given to the constructor.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		printer.flush();
 	}
 
 	@Override
@@ -145,7 +183,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		{
 			if (field)
 			{
-				logger.warn("no final modifier for fields, changing to const");
+				diagnostics.report(Category.FINAL_FIELD);
 				printer.print("const ");
 			}
 			else
@@ -155,36 +193,51 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		}
 		if (ModifierSet.isNative(modifiers))
 		{
-			logger.warn("Ignoring modifier 'native'");
+			diagnostics.report(Category.MODIFIER_IGNORED, "native");
 			// printer.print("native ");
 		}
 		if (ModifierSet.isStrictfp(modifiers))
 		{
-			logger.warn("Ignoring modifier 'strictfp'");
+			diagnostics.report(Category.MODIFIER_IGNORED, "strictfp");
 			// printer.print("strictfp ");
 		}
 		if (ModifierSet.isSynchronized(modifiers))
 		{
-			logger.warn("Ignoring modifier 'synchronized'");
+			diagnostics.report(Category.MODIFIER_IGNORED, "synchronized");
 			// printer.print("synchronized ");
 		}
 		if (ModifierSet.isTransient(modifiers))
 		{
-			logger.warn("Ignoring modifier 'transient'");
+			diagnostics.report(Category.MODIFIER_IGNORED, "transient");
 			// printer.print("transient ");
 		}
 		if (ModifierSet.isVolatile(modifiers))
 		{
-			logger.warn("Ignoring modifier 'volatile'");
+			diagnostics.report(Category.MODIFIER_IGNORED, "volatile");
 			// printer.print("volatile ");
 		}
 	}
 	
+	/**
+	 * Mark the line a node is about to be printed on in the source map, if any.
+	 */
+	private void mark(Node n)
+	{
+		if (sourceMap != null)
+		{
+			sourceMap.mark(printer.getLine(), n.getBeginLine(), n.getBeginColumn());
+		}
+	}
+
 	private void printMembers(List<BodyDeclaration> members, Object arg)
 	{
 		for (BodyDeclaration member : members)
 		{
-			printer.printLn();
+			if (profile.isComments())
+			{
+				printer.printLn();
+			}
+			mark(member);
 			member.accept(this, arg);
 			printer.printLn();
 		}
@@ -209,7 +262,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			for (AnnotationExpr a : annotations)
 			{
 				a.accept(this, arg);
-				printer.print(" ");
+				printer.print(' ');
 			}
 		}
 	}
@@ -267,7 +320,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 
 	private void printArguments(List<Expression> args, Object arg)
 	{
-		printer.print("(");
+		printer.print('(');
 		if (args != null)
 		{
 			for (Iterator<Expression> i = args.iterator(); i.hasNext();)
@@ -280,24 +333,17 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				}
 			}
 		}
-		printer.print(")");
+		printer.print(')');
 	}
 
 	private void printJavadoc(JavadocComment javadoc, Object arg)
 	{
-		if (javadoc != null)
+		if (javadoc != null && profile.isComments())
 		{
 			javadoc.accept(this, arg);
 		}
 	}
 	
-	private void printNumeric(String value)
-	{
-		// remove any type-hinted suffixes (F,D,L, etc)
-		printer.print(value.replaceAll("[dflDFL]", ""));
-		//printer.print(value);
-	}
-
 	@Override
 	public void visit(CompilationUnit n, Object arg)
 	{
@@ -316,17 +362,23 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		{
 			for (ImportDeclaration i : n.getImports())
 			{
+				mark(i);
 				i.accept(this, arg);
 			}
-			printer.printLn();
+			if (profile.isComments())
+			{
+				printer.printLn();
+			}
 		}
 		if (n.getTypes() != null)
 		{
 			for (Iterator<TypeDeclaration> i = n.getTypes().iterator(); i.hasNext();)
 			{
-				i.next().accept(this, arg);
+				TypeDeclaration type = i.next();
+				mark(type);
+				type.accept(this, arg);
 				printer.printLn();
-				if (i.hasNext())
+				if (i.hasNext() && profile.isComments())
 				{
 					printer.printLn();
 				}
@@ -334,6 +386,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		}
 		printer.unindent();
 		printer.printLn("}");
+		if (sourceMap != null)
+		{
+			sourceMap.setLineCount(printer.getLine());
+		}
 	}
 
 	@Override
@@ -358,7 +414,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		n.getName().accept(this, arg);
 		if (n.isAsterisk())
 		{
-			logger.warn("starred imports are scary");
+			diagnostics.report(Category.STARRED_IMPORT);
 			printer.print(".*");
 		}
 		printer.printLn(";");
@@ -386,6 +442,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(LineComment n, Object arg1)
 	{
+		if (!profile.isComments())
+		{
+			return;
+		}
 		printer.print("//");
 		printer.printLn(n.getContent());
 	}
@@ -393,6 +453,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(BlockComment n, Object arg1)
 	{
+		if (!profile.isComments())
+		{
+			return;
+		}
 		printer.print("/*");
 		printer.print(n.getContent());
 		printer.printLn("*/");
@@ -454,38 +518,38 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			printMembers(n.getMembers(), arg);
 		}
 		printer.unindent();
-		printer.print("}");
+		printer.print('}');
 	}
 
 	@Override
 	public void visit(EnumDeclaration arg0, Object arg1)
 	{
-		logger.error("Enums are not support in AS3, your code will probably break now.");
+		diagnostics.report(Category.UNSUPPORTED, "Enums");
 	}
 
 	@Override
 	public void visit(EmptyTypeDeclaration n, Object arg)
 	{
 		printJavadoc(n.getJavaDoc(), arg);
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
 	public void visit(EnumConstantDeclaration arg0, Object arg1)
 	{
-		logger.error("EnumConstants are not support in AS3, your code will probably break now.");
+		diagnostics.report(Category.UNSUPPORTED, "EnumConstants");
 	}
 
 	@Override
 	public void visit(AnnotationDeclaration arg0, Object arg1)
 	{
-		logger.error("Annotations are not support in AS3, your code will probably break now.");
+		diagnostics.report(Category.UNSUPPORTED, "Annotations");
 	}
 
 	@Override
 	public void visit(AnnotationMemberDeclaration arg0, Object arg1)
 	{
-		logger.error("Annotation Members are not support in AS3, your code will probably break now.");
+		diagnostics.report(Category.UNSUPPORTED, "Annotation Members");
 	}
 
 	@Override
@@ -512,7 +576,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			//var.getId().accept(this, arg);
 			
 			printer.print(var.getId().getName());
-			printer.print(":");
+			printer.print(':');
 			if (var.getId().getArrayCount() > 0)
 			{
 				printer.print("Array");
@@ -534,7 +598,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				printer.print(", ");
 			}
 		}
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -565,11 +629,11 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		printTypeParameters(n.getName(), n.getTypeParameters(), arg);
 		if (n.getTypeParameters() != null)
 		{
-			printer.print(" ");
+			printer.print(' ');
 		}
 		printer.print(n.getName());
 
-		printer.print("(");
+		printer.print('(');
 		if (n.getParameters() != null)
 		{
 			for (Iterator<Parameter> i = n.getParameters().iterator(); i
@@ -583,10 +647,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				}
 			}
 		}
-		printer.print(")");
+		printer.print(')');
 
 		// no throws declaration in AS3
-		if (n.getThrows() != null)
+		if (n.getThrows() != null && profile.isComments())
 		{
 			printer.print("/* throws ");
 			for (Iterator<NameExpr> i = n.getThrows().iterator(); i.hasNext();)
@@ -614,14 +678,14 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		printTypeParameters(n.getName(), n.getTypeParameters(), arg);
 		if (n.getTypeParameters() != null)
 		{
-			printer.print(" ");
+			printer.print(' ');
 		}
 
 		
 		printer.print("function ");
 		printer.print(n.getName());
 
-		printer.print("(");
+		printer.print('(');
 		if (n.getParameters() != null)
 		{
 			for (Iterator<Parameter> i = n.getParameters().iterator(); i.hasNext();)
@@ -643,7 +707,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			printer.print("[]");
 		}*/
 
-		if (n.getThrows() != null)
+		if (n.getThrows() != null && profile.isComments())
 		{
 			printer.print(" /*throws ");
 			for (Iterator<NameExpr> i = n.getThrows().iterator(); i.hasNext();)
@@ -659,7 +723,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		}
 		if (n.getBody() == null)
 		{
-			printer.print(";");
+			printer.print(';');
 		}
 		else
 		{
@@ -677,9 +741,9 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
         if (n.isVarArgs()) {
             printer.print("...");
         }
-        printer.print(" ");
+        printer.print(' ');
         n.getId().accept(this, arg);
-        printer.print(":");
+        printer.print(':');
         n.getType().accept(this, arg);
 	}
 
@@ -687,7 +751,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	public void visit(EmptyMemberDeclaration n, Object arg)
 	{
 		printJavadoc(n.getJavaDoc(), arg);
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -716,7 +780,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		if (n.getScope() != null)
 		{
 			n.getScope().accept(this, arg);
-			printer.print(".");
+			printer.print('.');
 		}
 		printer.print(n.getName());
 		printTypeArgs(n.getName(), n.getTypeArgs(), arg);
@@ -731,31 +795,31 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				printer.print("Boolean");
 				break;
 			case Byte:
-				logger.warn("Replacing 'byte' with 'uint' for primitive type.");
+				diagnostics.report(Category.PRIMITIVE_REPLACED, "byte", "uint");
 				printer.print("uint");
 				break;
 			case Char:
 				// no char type in AS3
-				logger.warn("Replacing 'char' with 'String' for primitive type.");
+				diagnostics.report(Category.PRIMITIVE_REPLACED, "char", "String");
 				printer.print("String");
 				break;
 			case Double:
-				logger.warn("Replacing 'double' with 'Number' for primitive type.");
+				diagnostics.report(Category.PRIMITIVE_REPLACED, "double", "Number");
 				printer.print("Number");
 				break;
 			case Float:
-				logger.warn("Replacing 'float' with 'Number' for primitive type.");
+				diagnostics.report(Category.PRIMITIVE_REPLACED, "float", "Number");
 				printer.print("Number");
 				break;
 			case Int:
 				printer.print("int");
 				break;
 			case Long:
-				logger.warn("Replacing 'long' with 'Number' for primitive type.");
+				diagnostics.report(Category.PRIMITIVE_REPLACED, "long", "Number");
 				printer.print("Number");
 				break;
 			case Short:
-				logger.warn("Replacing 'short' with 'int' for primitive type.");
+				diagnostics.report(Category.PRIMITIVE_REPLACED, "short", "int");
 				printer.print("int");
 				break;
 		}
@@ -783,7 +847,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(WildcardType n, Object arg)
 	{
-		printer.print("*");
+		printer.print('*');
 		/*printer.print("?");
 		if (n.getExtends() != null)
 		{
@@ -801,9 +865,9 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	public void visit(ArrayAccessExpr n, Object arg)
 	{
 		n.getName().accept(this, arg);
-		printer.print("[");
+		printer.print('[');
 		n.getIndex().accept(this, arg);
-		printer.print("]");
+		printer.print(']');
 	}
 
 	@Override
@@ -814,7 +878,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		{
 			n.getInitializer().accept(this, arg);
 		}
-		printer.print(")");
+		printer.print(')');
 		/*n.getType().accept(this, arg);
 
 		if (n.getDimensions() != null)
@@ -844,10 +908,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(ArrayInitializerExpr n, Object arg)
 	{
-		printer.print("[");
+		printer.print('[');
 		if (n.getValues() != null)
 		{
-			printer.print(" ");
+			printer.print(' ');
 			for (Iterator<Expression> i = n.getValues().iterator(); i.hasNext();)
 			{
 				Expression expr = i.next();
@@ -857,20 +921,20 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 					printer.print(", ");
 				}
 			}
-			printer.print(" ");
+			printer.print(' ');
 		}
-		printer.print("]");
+		printer.print(']');
 	}
 
 	@Override
 	public void visit(AssignExpr n, Object arg)
 	{
 		n.getTarget().accept(this, arg);
-		printer.print(" ");
+		printer.print(' ');
 		switch (n.getOperator())
 		{
 			case assign:
-				printer.print("=");
+				printer.print('=');
 				break;
 			case and:
 				printer.print("&=");
@@ -906,7 +970,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				printer.print(">>>=");
 				break;
 		}
-		printer.print(" ");
+		printer.print(' ');
 		n.getValue().accept(this, arg);
 	}
 
@@ -914,7 +978,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	public void visit(BinaryExpr n, Object arg)
 	{
 		n.getLeft().accept(this, arg);
-		printer.print(" ");
+		printer.print(' ');
 		switch (n.getOperator())
 		{
 			case or:
@@ -924,13 +988,13 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				printer.print("&&");
 				break;
 			case binOr:
-				printer.print("|");
+				printer.print('|');
 				break;
 			case binAnd:
-				printer.print("&");
+				printer.print('&');
 				break;
 			case xor:
-				printer.print("^");
+				printer.print('^');
 				break;
 			case equals:
 				printer.print("==");
@@ -939,10 +1003,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				printer.print("!=");
 				break;
 			case less:
-				printer.print("<");
+				printer.print('<');
 				break;
 			case greater:
-				printer.print(">");
+				printer.print('>');
 				break;
 			case lessEquals:
 				printer.print("<=");
@@ -960,22 +1024,22 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 				printer.print(">>>");
 				break;
 			case plus:
-				printer.print("+");
+				printer.print('+');
 				break;
 			case minus:
-				printer.print("-");
+				printer.print('-');
 				break;
 			case times:
-				printer.print("*");
+				printer.print('*');
 				break;
 			case divide:
-				printer.print("/");
+				printer.print('/');
 				break;
 			case remainder:
-				printer.print("%");
+				printer.print('%');
 				break;
 		}
-		printer.print(" ");
+		printer.print(' ');
 		n.getRight().accept(this, arg);
 	}
 
@@ -983,7 +1047,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	public void visit(CastExpr n, Object arg)
 	{
 		n.getType().accept(this, arg);
-		printer.print("(");
+		printer.print('(');
 		n.getExpr().accept(this, arg);
 		printer.print(") ");
 	}
@@ -993,7 +1057,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	{
 		printer.print("Class(");
 		n.getType().accept(this, arg);
-		printer.print(")");
+		printer.print(')');
 		// printer.print(".class");
 	}
 
@@ -1010,16 +1074,16 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(EnclosedExpr n, Object arg)
 	{
-		printer.print("(");
+		printer.print('(');
 		n.getInner().accept(this, arg);
-		printer.print(")");
+		printer.print(')');
 	}
 
 	@Override
 	public void visit(FieldAccessExpr n, Object arg)
 	{
 		n.getScope().accept(this, arg);
-		printer.print(".");
+		printer.print('.');
 		printer.print(n.getField());
 	}
 
@@ -1034,52 +1098,46 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(StringLiteralExpr n, Object arg)
 	{
-		printer.print("\"");
-		printer.print(n.getValue());
-		printer.print("\"");
+		Literals.printString(printer, n.getValue());
 	}
 
 	@Override
 	public void visit(IntegerLiteralExpr n, Object arg1)
 	{
-		printer.print(n.getValue());
+		Literals.printInteger(printer, n.getValue());
 	}
 
 	@Override
 	public void visit(LongLiteralExpr n, Object arg1)
 	{
-		// remove any non-numeric type-hinting suffixes (D,L,F, etc)
-		printNumeric(n.getValue());
+		// remove the L suffix
+		Literals.printInteger(printer, n.getValue());
 	}
 
 	@Override
 	public void visit(IntegerLiteralMinValueExpr n, Object arg1)
 	{
-		printer.print(n.getValue());
+		Literals.printInteger(printer, n.getValue());
 	}
 
 	@Override
 	public void visit(LongLiteralMinValueExpr n, Object arg1)
 	{
-		printer.print(n.getValue());
+		Literals.printInteger(printer, n.getValue());
 	}
 
 	@Override
 	public void visit(CharLiteralExpr n, Object arg)
 	{
 		// no character literals in AS3, only strings.
-		printer.print("\"");
-		printer.print(n.getValue());
-		printer.print("\"");
+		Literals.printString(printer, n.getValue());
 	}
 
 	@Override
 	public void visit(DoubleLiteralExpr n, Object arg1)
 	{
-		// remove any non-numeric type-hinting suffixes (D,L,F, etc)
-		printNumeric(n.getValue());
-		//logger.error("Double Value: " + n.getValue());
-		//printer.print(n.getValue());
+		// remove the F or D suffix
+		Literals.printDouble(printer, n.getValue());
 	}
 
 	@Override
@@ -1110,7 +1168,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		if (n.getScope() != null)
 		{
 			n.getScope().accept(this, arg);
-			printer.print(".");
+			printer.print('.');
 		}
 		printTypeArgs(n.getName(), n.getTypeArgs(), arg);
 		printer.print(n.getName());
@@ -1129,7 +1187,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		if (n.getScope() != null)
 		{
 			n.getScope().accept(this, arg);
-			printer.print(".");
+			printer.print('.');
 		}
 
 		printer.print("new ");
@@ -1145,7 +1203,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			printer.indent();
 			printMembers(n.getAnonymousClassBody(), arg);
 			printer.unindent();
-			printer.print("}");
+			printer.print('}');
 		}
 	}
 
@@ -1153,7 +1211,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	public void visit(QualifiedNameExpr n, Object arg)
 	{
 		n.getQualifier().accept(this, arg);
-		printer.print(".");
+		printer.print('.');
 		printer.print(n.getName());
 	}
 
@@ -1163,7 +1221,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		if (n.getClassExpr() != null)
 		{
 			n.getClassExpr().accept(this, arg);
-			printer.print(".");
+			printer.print('.');
 		}
 		printer.print("this");
 	}
@@ -1174,7 +1232,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		if (n.getClassExpr() != null)
 		{
 			n.getClassExpr().accept(this, arg);
-			printer.print(".");
+			printer.print('.');
 		}
 		printer.print("super");
 	}
@@ -1185,16 +1243,16 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		switch (n.getOperator())
 		{
 			case positive:
-				printer.print("+");
+				printer.print('+');
 				break;
 			case negative:
-				printer.print("-");
+				printer.print('-');
 				break;
 			case inverse:
-				printer.print("~");
+				printer.print('~');
 				break;
 			case not:
-				printer.print("!");
+				printer.print('!');
 				break;
 			case preIncrement:
 				printer.print("++");
@@ -1251,7 +1309,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			//v.accept(this, arg);
 			
 			v.getId().accept(this, arg);
-			printer.print(":");
+			printer.print(':');
 			n.getType().accept(this, arg);
 			
 			if (v.getInit() != null)
@@ -1270,17 +1328,17 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(MarkerAnnotationExpr n, Object arg)
 	{
-		printer.print("[");
+		printer.print('[');
 		n.getName().accept(this, arg);
-		printer.print("]");
+		printer.print(']');
 	}
 
 	@Override
 	public void visit(SingleMemberAnnotationExpr n, Object arg)
 	{
-		printer.print("[");
+		printer.print('[');
 		n.getName().accept(this, arg);
-		printer.print("(");
+		printer.print('(');
 		n.getMemberValue().accept(this, arg);
 		printer.print(")]");
 	}
@@ -1288,9 +1346,9 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(NormalAnnotationExpr n, Object arg)
 	{
-		printer.print("[");
+		printer.print('[');
 		n.getName().accept(this, arg);
-		printer.print("(");
+		printer.print('(');
 		if (n.getPairs() != null)
 		{
 			for (Iterator<MemberValuePair> i = n.getPairs().iterator(); i.hasNext();)
@@ -1327,13 +1385,13 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			if (n.getExpr() != null)
 			{
 				n.getExpr().accept(this, arg);
-				printer.print(".");
+				printer.print('.');
 			}
 			printTypeArgs("super", n.getTypeArgs(), arg);
 			printer.print("super");
 		}
 		printArguments(n.getArgs(), arg);
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -1345,7 +1403,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(AssertStmt n, Object arg)
 	{
-		logger.error("Assert statements are unsupported in AS3.");
+		diagnostics.report(Category.UNSUPPORTED, "Assert statements");
 		/*printer.print("assert ");
 		n.getCheck().accept(this, arg);
 		if (n.getMessage() != null)
@@ -1365,18 +1423,19 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			printer.indent();
 			for (Statement s : n.getStmts())
 			{
+				mark(s);
 				s.accept(this, arg);
 				printer.printLn();
 			}
 			printer.unindent();
 		}
-		printer.print("}");
+		printer.print('}');
 	}
 
 	@Override
 	public void visit(LabeledStmt n, Object arg)
 	{
-		logger.warn("Why are you using labels?!?!");
+		diagnostics.report(Category.LABEL);
 		printer.print(n.getLabel());
         printer.print(": ");
         n.getStmt().accept(this, arg);
@@ -1385,14 +1444,14 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(EmptyStmt arg0, Object arg1)
 	{
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
 	public void visit(ExpressionStmt n, Object arg)
 	{
 		n.getExpression().accept(this, arg);
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -1410,7 +1469,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 			}
 			printer.unindent();
 		}
-		printer.print("}");
+		printer.print('}');
 	}
 
 	@Override
@@ -1420,7 +1479,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		{
 			printer.print("case ");
 			n.getLabel().accept(this, arg);
-			printer.print(":");
+			printer.print(':');
 		}
 		else
 		{
@@ -1432,6 +1491,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		{
 			for (Statement s : n.getStmts())
 			{
+				mark(s);
 				s.accept(this, arg);
 				printer.printLn();
 			}
@@ -1445,10 +1505,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		printer.print("break");
 		if (n.getId() != null)
 		{
-			printer.print(" ");
+			printer.print(' ');
 			printer.print(n.getId());
 		}
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -1457,10 +1517,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		printer.print("return");
 		if (n.getExpr() != null)
 		{
-			printer.print(" ");
+			printer.print(' ');
 			n.getExpr().accept(this, arg);
 		}
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -1472,6 +1532,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		n.getThenStmt().accept(this, arg);
 		if (n.getElseStmt() != null)
 		{
+			mark(n.getElseStmt());
 			printer.printLn(" else ");
 			n.getElseStmt().accept(this, arg);
 		}
@@ -1492,10 +1553,10 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		printer.print("continue");
 		if (n.getId() != null)
 		{
-			printer.print(" ");
+			printer.print(' ');
 			printer.print(n.getId());
 		}
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
@@ -1511,7 +1572,7 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	@Override
 	public void visit(ForeachStmt n, Object arg)
 	{
-		logger.warn("Detected ForEach style for loop... this probably won't convert correctly. Use standard FOR statements.");
+		diagnostics.report(Category.FOREACH);
 		printer.print("for each (");
 		n.getVariable().accept(this, arg);
 		printer.print(" in ");
@@ -1563,19 +1624,75 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 	{
 		printer.print("throw ");
 		n.getExpr().accept(this, arg);
-		printer.print(";");
+		printer.print(';');
 	}
 
 	@Override
 	public void visit(SynchronizedStmt n, Object arg)
 	{
-		logger.error("Synchronized blocks do not work in AS3");
-		printer.print("/*synchronized (");
-		n.getExpr().accept(this, arg);
-		printer.print(")*/ ");
+		diagnostics.report(Category.UNSUPPORTED, "Synchronized blocks");
+		if (profile.isComments())
+		{
+			printer.print("/*synchronized (");
+			n.getExpr().accept(this, arg);
+			printer.print(")*/ ");
+		}
 		n.getBlock().accept(this, arg);
 	}
 
+	/**
+	 * @return the collector this visitor reports to
+	 */
+	public Diagnostics getDiagnostics()
+	{
+		return diagnostics;
+	}
+	
+	/**
+	 * @param diagnostics the collector to report to, Diagnostics.DISABLED to report nothing
+	 */
+	public void setDiagnostics(Diagnostics diagnostics)
+	{
+		this.diagnostics = diagnostics;
+	}
+	
+	/**
+	 * @return the layout of the printed code
+	 */
+	public OutputProfile getOutputProfile()
+	{
+		return profile;
+	}
+	
+	/**
+	 * @param profile the layout of the printed code, set it before visiting
+	 */
+	public void setOutputProfile(OutputProfile profile)
+	{
+		this.profile = profile;
+		printer.setIndentSpace(profile.getIndent());
+	}
+	
+	/**
+	 * @return the source map being built, null if none
+	 */
+	public SourceMap getSourceMap()
+	{
+		return sourceMap;
+	}
+	
+	/**
+	 * Build a source map while dumping. Each member and statement marks the AS3 line
+	 * it starts on with its Java line and column. Set it before visiting.
+	 * 
+	 * @param sourceMap an empty source map, or null to build none
+	 */
+	public void setSourceMap(SourceMap sourceMap)
+	{
+		this.sourceMap = sourceMap;
+		printer.setCountingLines(sourceMap != null);
+	}
+	
 	@Override
 	public void visit(TryStmt n, Object arg)
 	{
@@ -1585,11 +1702,13 @@ public class AS3DumpVisitor implements VoidVisitor<Object>
 		{
 			for (CatchClause c : n.getCatchs())
 			{
+				mark(c);
 				c.accept(this, arg);
 			}
 		}
 		if (n.getFinallyBlock() != null)
 		{
+			mark(n.getFinallyBlock());
 			printer.print(" finally ");
 			n.getFinallyBlock().accept(this, arg);
 		}
@@ -0,0 +1,294 @@
+package com.sojostudios.as3.visitors;
+
+import japa.parser.ast.CompilationUnit;
+import japa.parser.ast.Node;
+import japa.parser.ast.PackageDeclaration;
+import japa.parser.ast.body.AnnotationDeclaration;
+import japa.parser.ast.body.AnnotationMemberDeclaration;
+import japa.parser.ast.body.ClassOrInterfaceDeclaration;
+import japa.parser.ast.body.EnumConstantDeclaration;
+import japa.parser.ast.body.EnumDeclaration;
+import japa.parser.ast.body.FieldDeclaration;
+import japa.parser.ast.body.Parameter;
+import japa.parser.ast.expr.ArrayCreationExpr;
+import japa.parser.ast.expr.Expression;
+import japa.parser.ast.expr.MethodCallExpr;
+import japa.parser.ast.expr.VariableDeclarationExpr;
+import japa.parser.ast.stmt.AssertStmt;
+import japa.parser.ast.stmt.BlockStmt;
+import japa.parser.ast.type.ClassOrInterfaceType;
+import japa.parser.ast.type.ReferenceType;
+import japa.parser.ast.type.Type;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Mutates and dumps a CompilationUnit in a single pass. Each node is mutated by an
+ * AS3MutationVisitor right before it is printed, instead of walking the whole tree
+ * once to mutate it and once more to dump it. The output is the same as running
+ * the two visitors one after the other.
+ *
+ * The mutation visitor skips whatever it replaced or converted, so the dump of those
+ * nodes runs with mutation turned off. The parts of the tree the dump does not print
+ * at all (enums, annotations, asserts, array dimensions) are still handed to the
+ * mutation visitor, which keeps its variable scopes exactly as in two passes.
+ *
+ * A fused visitor is used for one compilation at a time, like the mutation visitor.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class AS3FusedVisitor extends AS3DumpVisitor
+{
+	private final AS3MutationVisitor mutator;
+	private boolean mutating = true;
+
+	/**
+	 * The type of the declaration being dumped, already mutated as a whole. The dump
+	 * prints it once per variable.
+	 */
+	private Type premutated = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config the frozen mutation options
+	 */
+	public AS3FusedVisitor(MutationConfig config)
+	{
+		mutator = new AS3MutationVisitor(config);
+		mutator.setDiagnostics(getDiagnostics());
+	}
+
+	/**
+	 * Dump straight to a Writer. Call {@link #flush()} after visiting.
+	 *
+	 * @param config the frozen mutation options
+	 * @param out the Writer
+	 */
+	public AS3FusedVisitor(MutationConfig config, Writer out)
+	{
+		super(out);
+		mutator = new AS3MutationVisitor(config);
+		mutator.setDiagnostics(getDiagnostics());
+	}
+
+	/**
+	 * Both passes report to the same collector.
+	 */
+	@Override
+	public void setDiagnostics(Diagnostics diagnostics)
+	{
+		super.setDiagnostics(diagnostics);
+		mutator.setDiagnostics(diagnostics);
+	}
+
+	/**
+	 * Dump a node and everything below it as it is.
+	 */
+	private void dumpUnmutated(Node n, Object arg)
+	{
+		boolean was = mutating;
+		mutating = false;
+		n.accept(this, arg);
+		mutating = was;
+	}
+
+	/**
+	 * Run the mutation visitor over a node the dump does not print.
+	 */
+	private void mutateUnprinted(Node n, Object arg)
+	{
+		if (mutating && n != null)
+		{
+			n.accept(mutator, arg);
+		}
+	}
+
+	@Override
+	public void visit(CompilationUnit n, Object arg)
+	{
+		if (mutating)
+		{
+			mutator.mutateImports(n);
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(PackageDeclaration n, Object arg)
+	{
+		if (mutating)
+		{
+			mutator.mutatePackage(n);
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(ClassOrInterfaceDeclaration n, Object arg)
+	{
+		if (!mutating)
+		{
+			super.visit(n, arg);
+			return;
+		}
+		mutator.pushScope();
+		mutator.mutateClass(n);
+		super.visit(n, arg);
+		mutator.popScope();
+	}
+
+	@Override
+	public void visit(BlockStmt n, Object arg)
+	{
+		if (!mutating)
+		{
+			super.visit(n, arg);
+			return;
+		}
+		mutator.pushScope();
+		super.visit(n, arg);
+		mutator.popScope();
+	}
+
+	@Override
+	public void visit(ClassOrInterfaceType n, Object arg)
+	{
+		if (mutating)
+		{
+			mutator.mutateType(n);
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(ReferenceType n, Object arg)
+	{
+		if (mutating && n == premutated)
+		{
+			dumpUnmutated(n, arg);
+			return;
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(MethodCallExpr n, Object arg)
+	{
+		if (mutating)
+		{
+			Node replacement = mutator.mutateCall(n);
+			if (replacement != null)
+			{
+				dumpUnmutated(replacement, arg);
+				return;
+			}
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(Parameter n, Object arg)
+	{
+		if (mutating)
+		{
+			mutator.registerParameter(n);
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(FieldDeclaration n, Object arg)
+	{
+		if (!mutating)
+		{
+			super.visit(n, arg);
+		}
+		else if (mutator.modifyDecl(n.getType(), n.getVariables(), arg))
+		{
+			dumpUnmutated(n, arg);
+		}
+		else
+		{
+			Type outer = premutated;
+			// the dump prints the type for every variable, or not at all
+			n.getType().accept(mutator, arg);
+			premutated = n.getType();
+			super.visit(n, arg);
+			premutated = outer;
+		}
+	}
+
+	@Override
+	public void visit(VariableDeclarationExpr n, Object arg)
+	{
+		if (!mutating)
+		{
+			super.visit(n, arg);
+		}
+		else if (mutator.modifyDecl(n.getType(), n.getVars(), arg))
+		{
+			dumpUnmutated(n, arg);
+		}
+		else
+		{
+			Type outer = premutated;
+			// the dump prints the type for every variable, or not at all
+			n.getType().accept(mutator, arg);
+			premutated = n.getType();
+			super.visit(n, arg);
+			premutated = outer;
+		}
+	}
+
+	@Override
+	public void visit(ArrayCreationExpr n, Object arg)
+	{
+		List<Expression> dimensions = n.getDimensions();
+		if (dimensions != null)
+		{
+			for (Expression dim : dimensions)
+			{
+				mutateUnprinted(dim, arg);
+			}
+		}
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(EnumDeclaration n, Object arg)
+	{
+		mutateUnprinted(n, arg);
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(EnumConstantDeclaration n, Object arg)
+	{
+		mutateUnprinted(n, arg);
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(AnnotationDeclaration n, Object arg)
+	{
+		mutateUnprinted(n, arg);
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(AnnotationMemberDeclaration n, Object arg)
+	{
+		mutateUnprinted(n, arg);
+		super.visit(n, arg);
+	}
+
+	@Override
+	public void visit(AssertStmt n, Object arg)
+	{
+		mutateUnprinted(n, arg);
+		super.visit(n, arg);
+	}
+}
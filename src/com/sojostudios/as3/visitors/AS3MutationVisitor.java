@@ -8,14 +8,8 @@ import japa.parser.ast.body.ClassOrInterfaceDeclaration;
 import japa.parser.ast.body.FieldDeclaration;
 import japa.parser.ast.body.Parameter;
 import japa.parser.ast.body.VariableDeclarator;
-import japa.parser.ast.expr.ArrayAccessExpr;
 import japa.parser.ast.expr.ArrayCreationExpr;
-import japa.parser.ast.expr.AssignExpr;
-import japa.parser.ast.expr.AssignExpr.Operator;
-import japa.parser.ast.expr.BinaryExpr;
 import japa.parser.ast.expr.Expression;
-import japa.parser.ast.expr.FieldAccessExpr;
-import japa.parser.ast.expr.IntegerLiteralExpr;
 import japa.parser.ast.expr.MethodCallExpr;
 import japa.parser.ast.expr.NameExpr;
 import japa.parser.ast.expr.ObjectCreationExpr;
@@ -31,7 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.log4j.Logger;
+import com.sojostudios.as3.visitors.Diagnostics.Category;
 
 /**
  * This class mutates the AST to remove or exchange elements from Java
@@ -39,6 +33,13 @@ import org.apache.log4j.Logger;
  * 
  * The big mutations here relate to Arrays, Vectors, and Dictionaries.
  * 
+ * The options set on a visitor are frozen into a MutationConfig when it visits a
+ * compilation unit, so changes made through the collections its getters return
+ * are seen by the next compilation unit. A frozen config can be shared between
+ * threads, while a visitor holds the state of one compilation at a time. To run many compilations with the same
+ * options, configure one visitor, take its {@link #getConfig()} and create a visitor
+ * per compilation with {@link #AS3MutationVisitor(MutationConfig)}.
+ * 
  * @author Kurtis Kopf
  *
  */
@@ -52,7 +53,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	public static final String DEFAULT_DICTIONARY_CLASS = "Dictionary";
 	public static final String DEFAULT_VECTOR_CLASS = "Vector";
 	
-	private Logger logger = Logger.getLogger(getClass());
+	private Diagnostics diagnostics = new Diagnostics(Diagnostics.Mode.SUMMARY);
 	
 	private Map<String,String> packageToPackage = new HashMap<String,String>();
 	private Map<String,String> classesToClasses = new HashMap<String,String>();
@@ -72,8 +73,16 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	private String dictionaryClass = DEFAULT_DICTIONARY_CLASS;
 	private String vectorClass = DEFAULT_VECTOR_CLASS;
 	
+	private MethodRewrites methodRewrites = null;
+	
 	private MutationVariableScope varScope = new MutationVariableScope();
 	
+	private MutationConfig config = null;
+	// the collections above are the unmodifiable ones of config, copied on first write
+	private boolean shared = false;
+	
+	private static MutationRules defaultRules = null;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -81,12 +90,113 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public AS3MutationVisitor()
 	{
+		methodRewrites = new MethodRewrites().includeBuiltIns();
 	}
 	
 	/**
-	 * Include the default mutations.
+	 * Copy constructor. Shares the frozen config of the template.
+	 * 
+	 * @param template the visitor to take the mutation options from.
+	 */
+	public AS3MutationVisitor(AS3MutationVisitor template)
+	{
+		this(template.getConfig());
+	}
+	
+	/**
+	 * Create a visitor for one compilation. Nothing is copied while the options are
+	 * only read. The first call to a collection getter or includeDefaults() copies
+	 * the options into this visitor, so they can be changed, and like a setter
+	 * starts a new config for this visitor only.
+	 * 
+	 * @param config the frozen mutation options
+	 */
+	public AS3MutationVisitor(MutationConfig config)
+	{
+		MutationRules rules = config.getRules();
+		packageToPackage = rules.getPackageToPackage();
+		classesToClasses = rules.getClassesToClasses();
+		importsToImports = rules.getImportsToImports();
+		importsToIgnore = rules.getImportsToIgnore();
+		forcedImports = config.getForcedImports();
+		classesToArrays = rules.getClassesToArrays();
+		classesToDictionaries = rules.getClassesToDictionaries();
+		classesToVectors = rules.getClassesToVectors();
+		classesExtendArray = rules.getClassesExtendArray();
+		classesExtendDictionary = rules.getClassesExtendDictionary();
+		classesExtendVector = rules.getClassesExtendVector();
+		forceSprite = config.isForceSprite();
+		forceMovieClip = config.isForceMovieClip();
+		arrayClass = config.getArrayClass();
+		dictionaryClass = config.getDictionaryClass();
+		vectorClass = config.getVectorClass();
+		methodRewrites = config.getMethodRewrites();
+		this.config = config;
+		shared = true;
+	}
+	
+	/**
+	 * Copy the collections shared with the config before they are changed, and
+	 * drop the config so the changes are seen.
+	 */
+	private void unshare()
+	{
+		if (!shared)
+		{
+			return;
+		}
+		packageToPackage = new HashMap<String,String>(packageToPackage);
+		classesToClasses = new HashMap<String,String>(classesToClasses);
+		importsToImports = new HashMap<String,String>(importsToImports);
+		importsToIgnore = new ArrayList<String>(importsToIgnore);
+		forcedImports = new ArrayList<String>(forcedImports);
+		classesToArrays = new ArrayList<String>(classesToArrays);
+		classesToDictionaries = new ArrayList<String>(classesToDictionaries);
+		classesToVectors = new ArrayList<String>(classesToVectors);
+		classesExtendArray = new ArrayList<String>(classesExtendArray);
+		classesExtendDictionary = new ArrayList<String>(classesExtendDictionary);
+		classesExtendVector = new ArrayList<String>(classesExtendVector);
+		methodRewrites = new MethodRewrites(methodRewrites);
+		shared = false;
+		config = null;
+	}
+	
+	/**
+	 * Include the default mutations. They are copied from a table that is built
+	 * only once.
 	 */
 	public void includeDefaults()
+	{
+		MutationRules defaults = getDefaultRules();
+		unshare();
+		packageToPackage.putAll(defaults.getPackageToPackage());
+		classesToClasses.putAll(defaults.getClassesToClasses());
+		importsToImports.putAll(defaults.getImportsToImports());
+		importsToIgnore.addAll(defaults.getImportsToIgnore());
+		classesToArrays.addAll(defaults.getClassesToArrays());
+		classesToDictionaries.addAll(defaults.getClassesToDictionaries());
+		classesToVectors.addAll(defaults.getClassesToVectors());
+		classesExtendArray.addAll(defaults.getClassesExtendArray());
+		classesExtendDictionary.addAll(defaults.getClassesExtendDictionary());
+		classesExtendVector.addAll(defaults.getClassesExtendVector());
+		config = null;
+	}
+	
+	/**
+	 * @return the default mutations, frozen.
+	 */
+	public static synchronized MutationRules getDefaultRules()
+	{
+		if (defaultRules == null)
+		{
+			AS3MutationVisitor defaults = new AS3MutationVisitor();
+			defaults.addDefaultMutations();
+			defaultRules = new MutationRules(defaults);
+		}
+		return defaultRules;
+	}
+	
+	private void addDefaultMutations()
 	{
 		
 		importsToIgnore.add("java.*");
@@ -267,22 +377,27 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	@Override
 	public Node visit(CompilationUnit n, Object arg)
 	{
-		if (forceSprite)
-		{
-			forcedImports.add("flash.display.Sprite");
-		}
-		if (forceMovieClip)
+		mutateImports(n);
+		return super.visit(n, arg);
+	}
+	
+	/**
+	 * Start a compilation unit and add, remove and replace its imports.
+	 */
+	void mutateImports(CompilationUnit n)
+	{
+		// a new compilation, forget the variables of the last one
+		varScope = new MutationVariableScope();
+		if (!shared)
 		{
-			forcedImports.add("flash.display.MovieClip");
+			// the collections of this visitor may have changed since the last one
+			config = null;
 		}
 		
 		List<ImportDeclaration> addMe = new ArrayList<ImportDeclaration>();
-		if (forcedImports.size() > 0)
+		for (String forcedImport : getConfig().importsToAdd)
 		{
-			for (String forcedImport : forcedImports)
-			{
-				addMe.add(new ImportDeclaration(new NameExpr(forcedImport), false, forcedImport.contains("*")));
-			}
+			addMe.add(new ImportDeclaration(new NameExpr(forcedImport), false, forcedImport.contains("*")));
 		}
 		
 		if (n.getImports() != null)
@@ -291,22 +406,15 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 			for (ImportDeclaration i : n.getImports())
 			{
 				String imp = i.getName().toString();
-				for (String ignore : importsToIgnore)
+				if (rules().ignoredImports.matches(imp))
 				{
-					if (imp.matches(ignore))
-					{
-						logger.info("removing import " + imp);
-						removeMe.add(i);
-					}
+					diagnostics.report(Category.IMPORT_REMOVED, imp);
+					removeMe.add(i);
 				}
-				for (String impFrom : importsToImports.keySet())
+				for (String newImport : rules().importRules.values(imp))
 				{
-					if (imp.matches(impFrom))
-					{
-						String newImport = importsToImports.get(impFrom);
-						logger.info("modifying import from " + imp + " to " + newImport);
-						addMe.add(new ImportDeclaration(new NameExpr(newImport), false, newImport.contains("*")));
-					}
+					diagnostics.report(Category.IMPORT_CHANGED, imp, newImport);
+					addMe.add(new ImportDeclaration(new NameExpr(newImport), false, newImport.contains("*")));
 				}
 			}
 			n.getImports().removeAll(removeMe);
@@ -327,11 +435,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 				
 				used.put(impName, true);
 				n.getImports().add(imp);
-				logger.info("adding import " + impName);
+				diagnostics.report(Category.IMPORT_ADDED, impName);
 			}
 		}
-		
-		return super.visit(n, arg);
 	}
 
 	/**
@@ -339,47 +445,25 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	@Override
 	public Node visit(ClassOrInterfaceType n, Object arg)
+	{
+		mutateType(n);
+		return super.visit(n, arg);
+	}
+	
+	/**
+	 * Rename a class reference, without its scope and type arguments.
+	 */
+	void mutateType(ClassOrInterfaceType n)
 	{
 		//logger.warn("class or interface type reference " + n.getName());
 		
-		for(String incoming : classesToClasses.keySet())
+		// covers classesToClasses and the Array, Dictionary and Vector conversions
+		String newName = classify(n.getName()).resolvedName;
+		if (!newName.equals(n.getName()))
 		{
-			if (n.getName().matches(incoming))
-			{
-				String newName = classesToClasses.get(incoming);
-				logger.info("changing class reference from " + n.getName() + " to " + newName);
-				n.setName(newName);
-			}
+			diagnostics.report(Category.TYPE_RENAMED, n.getName(), newName);
+			n.setName(newName);
 		}
-		
-		for(String incoming : classesToArrays)
-		{
-			if (n.getName().matches(incoming))
-			{
-				logger.info("changing class reference from " + n.getName() + " to Array [" + arrayClass + "]");
-				n.setName(arrayClass);
-			}
-		}
-		
-		for(String incoming : classesToDictionaries)
-		{
-			if (n.getName().matches(incoming))
-			{
-				logger.info("changing class reference from " + n.getName() + " to Dictionary [" + dictionaryClass + "]");
-				n.setName(dictionaryClass);
-			}
-		}
-		
-		for(String incoming : classesToVectors)
-		{
-			if (n.getName().matches(incoming))
-			{
-				logger.info("changing class reference from " + n.getName() + " to Vector [" +  vectorClass + "]");
-				n.setName(vectorClass);
-			}
-		}
-		
-		return super.visit(n, arg);
 	}
 
 	/**
@@ -388,6 +472,22 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	@Override
 	public Node visit(MethodCallExpr n, Object arg)
+	{
+		Node replacement = mutateCall(n);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		return super.visit(n, arg);
+	}
+	
+	/**
+	 * Rewrite a method call on a tracked variable.
+	 * 
+	 * @return the node replacing the call, which is not visited any further, or
+	 *         null to go on visiting the call
+	 */
+	Node mutateCall(MethodCallExpr n)
 	{
 		if (n.getScope() != null && n.getScope() instanceof NameExpr)
 		{
@@ -400,87 +500,28 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 			{
 				//logger.warn("found mutation");
 				String method = n.getName();
-				// string mutations (.equals() to == [BinaryExpr])
-				if (mut.type.getName().equals("String") && method.equals("equals"))
-				{
-					logger.info("found a string equals method reference");
-					Expression right = n.getArgs().get(0);
-					BinaryExpr expr = new BinaryExpr(n.getScope(), right, BinaryExpr.Operator.equals);
-					return expr;
-				}
-				if (mut.type.getName().equals("String") && method.equals("length"))
+				int arity = n.getArgs() == null ? 0 : n.getArgs().size();
+				MethodRewrite rewrite = getConfig().getMethodRewrites().find(mut, method, arity);
+				if (rewrite != null)
 				{
-					logger.info("found a string length method reference");
-					FieldAccessExpr expr = new FieldAccessExpr(n.getScope(), "length");
-					return expr;
-				}
-				// array and dictionary mutations
-				if (mut.hasFlag(ARRAY_MUTATION_FLAG) || mut.hasFlag(DICTIONARY_MUTATION_FLAG) || mut.hasFlag(VECTOR_MUTATION_FLAG))
-				{
-					logger.info("found mutation for " + method + " at current scope");
-					// put(a, b) -> [a]=b;
-					// add(a) -> push(a);
-					// get(a) -> [a];
-					// size() -> length;
-					
-					if (method.equals("put") && n.getArgs().size() > 1)
-					{
-						// replace with AssignmentExpr with ArrayAccessExpr and B expression
-						Expression arg1 = n.getArgs().get(0);
-						Expression right = n.getArgs().get(1);
-						ArrayAccessExpr left = new ArrayAccessExpr(n.getScope(), arg1);
-						AssignExpr expr = new AssignExpr(left, right, Operator.assign);
-						return expr;
-					}
-					else if (method.equals("add"))
-					{
-						// replace method name with "push"
-						n.setName("push");
-						return n;
-					}
-					else if (method.equals("get") && n.getArgs().size() > 0)
-					{
-						// replace with ArrayAccessExpr
-						Expression arg1 = n.getArgs().get(0);
-						ArrayAccessExpr expr = new ArrayAccessExpr(n.getScope(), arg1);
-						return expr;
-					}
-					else if (method.equals("remove") && n.getArgs().size() > 0)
-					{
-						if (mut.hasFlag(ARRAY_MUTATION_FLAG) || mut.hasFlag(VECTOR_MUTATION_FLAG))
-						{
-							// convert to splice(arg0, 1)
-							n.setName("splice");
-							n.getArgs().add(new IntegerLiteralExpr("1"));
-						}
-						else if (mut.hasFlag(DICTIONARY_MUTATION_FLAG))
-						{
-							// convert to delete method, dump visitor will have to convert to delete dict[key]
-							n.setName("!delete");
-							Expression arg1 = n.getArgs().get(0);
-							ArrayAccessExpr expr = new ArrayAccessExpr(n.getScope(), arg1);
-							n.getArgs().clear();
-							n.getArgs().add(expr);
-						}
-					}
-					else if (method.equals("size"))
-					{
-						// replace with a FieldAccessExpr
-						FieldAccessExpr expr = new FieldAccessExpr(n.getScope(), "length");
-						return expr;
-					}
-					else
+					diagnostics.report(Category.CALL_REWRITTEN, method);
+					Node replacement = rewrite.rewrite(n, mut);
+					if (replacement != null)
 					{
-						logger.warn("Unhandled method " + n + " on a mutated variable");
+						return replacement;
 					}
 				}
+				else if (mut.hasFlag(MutationFlags.COLLECTION))
+				{
+					diagnostics.report(Category.UNHANDLED_CALL, n);
+				}
 			}
 			else if (n.getName().equals("equals"))
 			{
-				logger.warn("Potentially unhandled 'equals' method call, this might not be what you want to do.");
+				diagnostics.report(Category.STRING_EQUALS);
 			}
 		}
-		return super.visit(n, arg);
+		return null;
 	}
 	
 	/**
@@ -488,20 +529,24 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	@Override
 	public Node visit(PackageDeclaration n, Object arg)
+	{
+		mutatePackage(n);
+		return super.visit(n, arg);
+	}
+	
+	void mutatePackage(PackageDeclaration n)
 	{
 		String fullPkg = n.getName().toString();
-		if (packageToPackage.size() > 0)
+		if (rules().packageRules.size() > 0)
 		{
-			for(String key : packageToPackage.keySet())
+			// the last matching rule wins
+			List<String> newPkgs = rules().packageRules.values(fullPkg);
+			if (newPkgs.size() > 0)
 			{
-				if (fullPkg.matches(key))
-				{
-					NameExpr nm = new NameExpr(packageToPackage.get(key));
-					n.setName(nm);
-				}
+				NameExpr nm = new NameExpr(newPkgs.get(newPkgs.size() - 1));
+				n.setName(nm);
 			}
 		}
-		return super.visit(n, arg);
 	}
 
 	/**
@@ -538,7 +583,13 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 		}
 	}
 	
-	private boolean modifyDecl(Type type, List<VariableDeclarator> vars, Object arg)
+	/**
+	 * Convert a declaration if its type is converted, otherwise register its variables.
+	 * 
+	 * @return true if the declaration was converted. Its initializers were visited
+	 *         where needed, nothing else of it should be visited.
+	 */
+	boolean modifyDecl(Type type, List<VariableDeclarator> vars, Object arg)
 	{
 		boolean modified = false;
 		if (type instanceof ReferenceType)
@@ -549,62 +600,45 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 			{
 				ClassOrInterfaceType ct = (ClassOrInterfaceType)rt.getType();
 				//logger.warn("got variable declaration " + ct.getName() + " " + ct.getTypeArgs() + " " + rt.getArrayCount());
-				String name = ct.getName();
+				TypeClassifier.Classification classification = classify(ct.getName());
+				// conversions run once per matching rule
 				// Array conversions
-				for(String classToArray : classesToArrays)
+				for(int i = classification.arrays; i > 0; i--)
 				{
-					if (name.matches(classToArray))
-					{
-						modified = true;
-						varDeclToArray(vars, rt, ct, arg);
-					}
+					modified = true;
+					varDeclToArray(vars, rt, ct, arg);
 				}
 				// Dictionary conversions
-				for(String classToDict : classesToDictionaries)
+				for(int i = classification.dictionaries; i > 0; i--)
 				{
-					if (name.matches(classToDict))
-					{
-						modified = true;
-						varDeclToDictionary(vars, rt, ct, arg);
-					}
+					modified = true;
+					varDeclToDictionary(vars, rt, ct, arg);
 				}
 				// Vector conversions
-				for(String classToVect : classesToVectors)
+				for(int i = classification.vectors; i > 0; i--)
 				{
-					if (name.matches(classToVect))
-					{
-						modified = true;
-						varDeclToVector(vars, rt, ct, arg);
-					}
+					modified = true;
+					varDeclToVector(vars, rt, ct, arg);
 				}
 				// register variable type even for unmodified vars
 				if (!modified)
 				{
-					List<String> flags = new ArrayList<String>();
+					int flags = 0;
 					// look for extensions
 					// array extension
-					for(String classExtArray : classesExtendArray)
+					if (classification.extendArrays > 0)
 					{
-						if (name.matches(classExtArray))
-						{
-							flags.add(ARRAY_MUTATION_FLAG);
-						}
+						flags |= MutationFlags.ARRAY;
 					}
 					// dictionary extension
-					for(String classExtDict : classesExtendDictionary)
+					if (classification.extendDictionaries > 0)
 					{
-						if (name.matches(classExtDict))
-						{
-							flags.add(DICTIONARY_MUTATION_FLAG);
-						}
+						flags |= MutationFlags.DICTIONARY;
 					}
 					// vector extension
-					for(String classExtVector : classesExtendVector)
+					if (classification.extendVectors > 0)
 					{
-						if (name.matches(classExtVector))
-						{
-							flags.add(VECTOR_MUTATION_FLAG);
-						}
+						flags |= MutationFlags.VECTOR;
 					}
 					// register declarators
 					for(VariableDeclarator varDec : vars)
@@ -614,7 +648,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 						VarMutation mut = varScope.getVarCurScopeOnly(varDec.getId().getName());
 						if (mut == null)
 						{
-							logger.info("registering variable " + varDec.getId().getName() + " with mutation flags: " + flags);
+							diagnostics.report(Category.VARIABLE_FLAGGED, varDec.getId().getName(), diagnostics.isDetailed() ? MutationFlags.names(flags) : null);
 							varScope.addVar(varDec.getId().getName(), ct, flags);
 						}
 					}
@@ -631,21 +665,16 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 * @param flag
 	 * @param ct
 	 */
-	private void registerMutation(String name, String flag, ClassOrInterfaceType ct)
+	private void registerMutation(String name, int flag, ClassOrInterfaceType ct)
 	{
 		VarMutation mut = varScope.getVarCurScopeOnly(name);
 		if (mut != null)
 		{
-			if (!mut.hasFlag(flag))
-			{	
-				mut.mutationFlags.add(flag);
-			}
+			mut.mutationFlags |= flag;
 		}
 		else
 		{
-			List<String> flags = new ArrayList<String>();
-			flags.add(flag);
-			varScope.addVar(name, ct, flags);
+			varScope.addVar(name, ct, flag);
 		}
 	}
 
@@ -658,13 +687,13 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	private void varDeclToArray(List<VariableDeclarator> vars, ReferenceType rt, ClassOrInterfaceType ct, Object arg)
 	{
-		logger.info("Converting variable declaration " + ct + " to Array [" + arrayClass + "] declaration with typing info");
+		diagnostics.report(Category.DECLARATION_CONVERTED, ct, "Array", arrayClass);
 		// take the first typearg if it exists
 		String newName = arrayClass;
 		if (ct.getTypeArgs() != null && ct.getTypeArgs().size() > 0)
 		{
 			String typeArg = ct.getTypeArgs().get(0).toString();
-			logger.info("taking TypeArg " + typeArg + " as new Array [" + arrayClass + "] class type");
+			diagnostics.report(Category.TYPE_ARGUMENT, typeArg, "Array");
 			newName = typeArg;
 			ct.setTypeArgs(null); // wipe out TypeArgs
 		}
@@ -675,8 +704,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 		for(VariableDeclarator varDec : vars)
 		{
 			// register mutation at current scope
-			logger.info("registering Array mutation for variable " + varDec.getId().getName());
-			registerMutation(varDec.getId().getName(), ARRAY_MUTATION_FLAG, ct);
+			diagnostics.report(Category.VARIABLE_REGISTERED, "Array", varDec.getId().getName());
+			registerMutation(varDec.getId().getName(), MutationFlags.ARRAY, ct);
 			
 			Expression init = varDec.getInit();
 			if (init != null)
@@ -699,15 +728,15 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	private void varDeclToVector(List<VariableDeclarator> vars, ReferenceType rt, ClassOrInterfaceType ct, Object arg)
 	{
-		logger.info("Converting variable declaration " + ct + " to Vector [" + vectorClass + "] declaration with typing info");
+		diagnostics.report(Category.DECLARATION_CONVERTED, ct, "Vector", vectorClass);
 		
 		ct.setName(vectorClass);
 		
 		for(VariableDeclarator varDec : vars)
 		{
 			// register mutation at current scope
-			logger.info("registering Vector mutation for variable " + varDec.getId().getName());
-			registerMutation(varDec.getId().getName(), VECTOR_MUTATION_FLAG, ct);
+			diagnostics.report(Category.VARIABLE_REGISTERED, "Vector", varDec.getId().getName());
+			registerMutation(varDec.getId().getName(), MutationFlags.VECTOR, ct);
 			
 			Expression init = varDec.getInit();
 			if (init != null)
@@ -736,7 +765,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	private void varDeclToDictionary(List<VariableDeclarator> vars, ReferenceType rt, ClassOrInterfaceType ct, Object arg)
 	{
-		logger.info("Converting variable declaration " + ct + " to Dictionary [" + dictionaryClass + "] declaration without typing");
+		diagnostics.report(Category.DECLARATION_CONVERTED, ct, "Dictionary", dictionaryClass);
 		// take the first typearg if it exists
 		String newName = dictionaryClass;
 		//ct.setTypeArgs(null);
@@ -746,13 +775,13 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 		for(VariableDeclarator varDec : vars)
 		{
 			// register mutation at current scope
-			logger.info("registering Dictionary mutation for variable " + varDec.getId().getName());
-			registerMutation(varDec.getId().getName(), DICTIONARY_MUTATION_FLAG, ct);
+			diagnostics.report(Category.VARIABLE_REGISTERED, "Dictionary", varDec.getId().getName());
+			registerMutation(varDec.getId().getName(), MutationFlags.DICTIONARY, ct);
 			
 			Expression init = varDec.getInit();
 			if (init != null)
 			{
-				logger.warn("initialization expression "  + init.getClass());
+				diagnostics.report(Category.UNEXPECTED_INITIALIZER, init.getClass());
 				if (init instanceof ObjectCreationExpr)
 				{
 					ObjectCreationExpr oce = (ObjectCreationExpr) init;
@@ -773,11 +802,21 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	@Override
 	public Node visit(BlockStmt n, Object arg)
 	{
-		varScope.pushScopeStack();
+		pushScope();
 		Node result = super.visit(n, arg);
-		varScope.popScopeStack();
+		popScope();
 		return result;
 	}
+	
+	void pushScope()
+	{
+		varScope.pushScopeStack();
+	}
+	
+	void popScope()
+	{
+		varScope.popScopeStack();
+	}
 
 	/**
 	 * Track variable scopes, also force Sprite extension if enabled.
@@ -785,8 +824,18 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	@Override
 	public Node visit(ClassOrInterfaceDeclaration n, Object arg)
 	{
-		varScope.pushScopeStack();
-		
+		pushScope();
+		mutateClass(n);
+		Node result = super.visit(n, arg);
+		popScope();
+		return result;
+	}
+	
+	/**
+	 * Force the Sprite or MovieClip extension.
+	 */
+	void mutateClass(ClassOrInterfaceDeclaration n)
+	{
 		if (n.getExtends() == null && (forceSprite || forceMovieClip))
 		{
 			List<ClassOrInterfaceType> ext = new ArrayList<ClassOrInterfaceType>();
@@ -794,10 +843,6 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 			ext.add(sprite);
 			n.setExtends(ext);
 		}
-		
-		Node result = super.visit(n, arg);
-		varScope.popScopeStack();
-		return result;
 	}
 
 	/**
@@ -805,6 +850,12 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	@Override
 	public Node visit(Parameter n, Object arg)
+	{
+		registerParameter(n);
+		return super.visit(n, arg);
+	}
+	
+	void registerParameter(Parameter n)
 	{
 		//logger.error("found parameter " + n.getId().getName() + " of type " + n.getType().getClass());
 		if (n.getType() instanceof ReferenceType)
@@ -813,38 +864,60 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 			if (rt.getType() instanceof ClassOrInterfaceType)
 			{
 				ClassOrInterfaceType ct = (ClassOrInterfaceType)rt.getType();
-				String type = ct.getName();
-				List<String> flags = new ArrayList<String>();
-				for(String classToArray : classesToArrays)
+				TypeClassifier.Classification type = classify(ct.getName());
+				int flags = 0;
+				if (type.arrays > 0)
 				{
-					if (type.matches(classToArray))
-					{
-						logger.info("adding Array mutation flag to parameter " + n.getId().getName());
-						flags.add(ARRAY_MUTATION_FLAG);
-					}
+					diagnostics.report(Category.PARAMETER_REGISTERED, "Array", n.getId().getName());
+					flags |= MutationFlags.ARRAY;
 				}
 				// Dictionary conversions
-				for(String classToDict : classesToDictionaries)
+				if (type.dictionaries > 0)
 				{
-					if (type.matches(classToDict))
-					{
-						logger.info("adding Dictionary mutation flag to parameter " + n.getId().getName());
-						flags.add(DICTIONARY_MUTATION_FLAG);
-					}
+					diagnostics.report(Category.PARAMETER_REGISTERED, "Dictionary", n.getId().getName());
+					flags |= MutationFlags.DICTIONARY;
 				}
 				// Vector conversions
-				for(String classToVect : classesToVectors)
+				if (type.vectors > 0)
 				{
-					if (type.matches(classToVect))
-					{
-						logger.info("adding Vector mutation flag to parameter " + n.getId().getName());
-						flags.add(VECTOR_MUTATION_FLAG);
-					}
+					diagnostics.report(Category.PARAMETER_REGISTERED, "Vector", n.getId().getName());
+					flags |= MutationFlags.VECTOR;
 				}
 				varScope.addVar(n.getId().getName(), ct, flags);
 			}
 		}
-		return super.visit(n, arg);
+	}
+
+	/**
+	 * The frozen rules of the config.
+	 */
+	private MutationRules rules()
+	{
+		return getConfig().getRules();
+	}
+	
+	/**
+	 * Look up how the rules treat a type name, in the cache of the config.
+	 */
+	private TypeClassifier.Classification classify(String name)
+	{
+		return getConfig().getClassifier().classify(name);
+	}
+	
+	/**
+	 * Freeze the options of this visitor. The setters, the collection getters and
+	 * the start of each compilation unit drop the frozen config, so later changes
+	 * are seen. A config that was handed out never changes.
+	 * 
+	 * @return the frozen options, for creating visitors on any thread
+	 */
+	public MutationConfig getConfig()
+	{
+		if (config == null)
+		{
+			config = new MutationConfig(this);
+		}
+		return config;
 	}
 
 	/**
@@ -852,6 +925,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public Map<String, String> getPackageToPackage()
 	{
+		unshare();
+		config = null;
 		return packageToPackage;
 	}
 
@@ -860,7 +935,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setPackageToPackage(Map<String, String> packageToPackage)
 	{
+		unshare();
 		this.packageToPackage = packageToPackage;
+		config = null;
 	}
 
 	/**
@@ -868,6 +945,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public Map<String, String> getClassesToClasses()
 	{
+		unshare();
+		config = null;
 		return classesToClasses;
 	}
 
@@ -876,7 +955,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesToClasses(Map<String, String> classesToClasses)
 	{
+		unshare();
 		this.classesToClasses = classesToClasses;
+		config = null;
 	}
 
 	/**
@@ -884,6 +965,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public Map<String, String> getImportsToImports()
 	{
+		unshare();
+		config = null;
 		return importsToImports;
 	}
 
@@ -892,7 +975,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setImportsToImports(Map<String, String> importsToImports)
 	{
+		unshare();
 		this.importsToImports = importsToImports;
+		config = null;
 	}
 
 	/**
@@ -900,6 +985,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getImportsToIgnore()
 	{
+		unshare();
+		config = null;
 		return importsToIgnore;
 	}
 
@@ -908,7 +995,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setImportsToIgnore(List<String> importsToIgnore)
 	{
+		unshare();
 		this.importsToIgnore = importsToIgnore;
+		config = null;
 	}
 
 	/**
@@ -916,6 +1005,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getForcedImports()
 	{
+		unshare();
+		config = null;
 		return forcedImports;
 	}
 
@@ -924,7 +1015,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setForcedImports(List<String> forcedImports)
 	{
+		unshare();
 		this.forcedImports = forcedImports;
+		config = null;
 	}
 
 	/**
@@ -932,6 +1025,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getClassesToArrays()
 	{
+		unshare();
+		config = null;
 		return classesToArrays;
 	}
 
@@ -940,7 +1035,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesToArrays(List<String> classesToArrays)
 	{
+		unshare();
 		this.classesToArrays = classesToArrays;
+		config = null;
 	}
 
 	/**
@@ -948,6 +1045,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getClassesToDictionaries()
 	{
+		unshare();
+		config = null;
 		return classesToDictionaries;
 	}
 
@@ -956,7 +1055,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesToDictionaries(List<String> classesToDictionaries)
 	{
+		unshare();
 		this.classesToDictionaries = classesToDictionaries;
+		config = null;
 	}
 
 	/**
@@ -964,6 +1065,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getClassesToVectors()
 	{
+		unshare();
+		config = null;
 		return classesToVectors;
 	}
 
@@ -972,7 +1075,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesToVectors(List<String> classesToVectors)
 	{
+		unshare();
 		this.classesToVectors = classesToVectors;
+		config = null;
 	}
 
 	/**
@@ -980,6 +1085,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getClassesExtendArray() 
 	{
+		unshare();
+		config = null;
 		return classesExtendArray;
 	}
 
@@ -988,7 +1095,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesExtendArray(List<String> classesExtendArray) 
 	{
+		unshare();
 		this.classesExtendArray = classesExtendArray;
+		config = null;
 	}
 
 	/**
@@ -996,6 +1105,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getClassesExtendDictionary() 
 	{
+		unshare();
+		config = null;
 		return classesExtendDictionary;
 	}
 
@@ -1004,7 +1115,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesExtendDictionary(List<String> classesExtendDictionary) 
 	{
+		unshare();
 		this.classesExtendDictionary = classesExtendDictionary;
+		config = null;
 	}
 
 	/**
@@ -1012,6 +1125,8 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public List<String> getClassesExtendVector() 
 	{
+		unshare();
+		config = null;
 		return classesExtendVector;
 	}
 
@@ -1020,7 +1135,9 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	 */
 	public void setClassesExtendVector(List<String> classesExtendVector) 
 	{
+		unshare();
 		this.classesExtendVector = classesExtendVector;
+		config = null;
 	}
 
 	/**
@@ -1037,6 +1154,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	public void setForceSprite(boolean forceSprite)
 	{
 		this.forceSprite = forceSprite;
+		config = null;
 	}
 
 	/**
@@ -1053,6 +1171,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	public void setForceMovieClip(boolean forceMovieClip)
 	{
 		this.forceMovieClip = forceMovieClip;
+		config = null;
 	}
 
 	/**
@@ -1069,6 +1188,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	public void setArrayClass(String arrayClass)
 	{
 		this.arrayClass = arrayClass;
+		config = null;
 	}
 
 	/**
@@ -1085,6 +1205,7 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	public void setDictionaryClass(String dictionaryClass)
 	{
 		this.dictionaryClass = dictionaryClass;
+		config = null;
 	}
 
 	/**
@@ -1101,5 +1222,45 @@ public class AS3MutationVisitor extends ModifierVisitorAdapter<Object>
 	public void setVectorClass(String vectorClass)
 	{
 		this.vectorClass = vectorClass;
+		config = null;
+	}
+
+	/**
+	 * The method call rewrites, including the built-in ones. Register rewrites
+	 * here before the first visit, or set a new table.
+	 * 
+	 * @return the methodRewrites
+	 */
+	public MethodRewrites getMethodRewrites()
+	{
+		unshare();
+		config = null;
+		return methodRewrites;
+	}
+
+	/**
+	 * @param methodRewrites the methodRewrites to set
+	 */
+	public void setMethodRewrites(MethodRewrites methodRewrites)
+	{
+		unshare();
+		this.methodRewrites = methodRewrites;
+		config = null;
+	}
+
+	/**
+	 * @return the collector this visitor reports to
+	 */
+	public Diagnostics getDiagnostics()
+	{
+		return diagnostics;
+	}
+
+	/**
+	 * @param diagnostics the collector to report to, Diagnostics.DISABLED to report nothing
+	 */
+	public void setDiagnostics(Diagnostics diagnostics)
+	{
+		this.diagnostics = diagnostics;
 	}
-}
\ No newline at end of file
+}
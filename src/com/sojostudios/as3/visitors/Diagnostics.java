@@ -0,0 +1,335 @@
+package com.sojostudios.as3.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Collects what the visitors notice while they translate a compilation unit: renamed
+ * types, converted declarations, replaced primitives, unsupported constructs. Each
+ * report is counted by category, which is an array increment. The message is only
+ * built and logged in DETAIL mode, so a summary costs next to nothing and a disabled
+ * collector costs nothing at all.
+ *
+ * Use one collector per compilation, it is not thread safe. Collectors can be added
+ * up into batch totals with {@link #add(Diagnostics)}, which is.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class Diagnostics
+{
+	/**
+	 * How much a collector keeps.
+	 */
+	public enum Mode
+	{
+		/**
+		 * Nothing at all.
+		 */
+		OFF,
+		/**
+		 * Counts per category.
+		 */
+		SUMMARY,
+		/**
+		 * Counts, plus every message, logged at the level of its category.
+		 */
+		DETAIL
+	}
+
+	/**
+	 * What was reported. {0}, {1} and {2} in the message are replaced by the
+	 * arguments of the report.
+	 */
+	public enum Category
+	{
+		IMPORT_REMOVED(Level.INFO, "removing import {0}"),
+		IMPORT_CHANGED(Level.INFO, "modifying import from {0} to {1}"),
+		IMPORT_ADDED(Level.INFO, "adding import {0}"),
+		STARRED_IMPORT(Level.WARN, "starred imports are scary"),
+		TYPE_RENAMED(Level.INFO, "changing class reference from {0} to {1}"),
+		DECLARATION_CONVERTED(Level.INFO, "Converting variable declaration {0} to {1} [{2}] declaration"),
+		TYPE_ARGUMENT(Level.INFO, "taking TypeArg {0} as new {1} class type"),
+		VARIABLE_REGISTERED(Level.INFO, "registering {0} mutation for variable {1}"),
+		VARIABLE_FLAGGED(Level.INFO, "registering variable {0} with mutation flags: {1}"),
+		PARAMETER_REGISTERED(Level.INFO, "adding {0} mutation flag to parameter {1}"),
+		UNEXPECTED_INITIALIZER(Level.WARN, "initialization expression {0}"),
+		CALL_REWRITTEN(Level.INFO, "found mutation for {0} at current scope"),
+		UNHANDLED_CALL(Level.WARN, "Unhandled method {0} on a mutated variable"),
+		STRING_EQUALS(Level.WARN, "Potentially unhandled 'equals' method call, this might not be what you want to do."),
+		PRIMITIVE_REPLACED(Level.WARN, "Replacing '{0}' with '{1}' for primitive type."),
+		FINAL_FIELD(Level.WARN, "no final modifier for fields, changing to const"),
+		MODIFIER_IGNORED(Level.WARN, "Ignoring modifier '{0}'"),
+		LABEL(Level.WARN, "Why are you using labels?!?!"),
+		FOREACH(Level.WARN, "Detected ForEach style for loop... this probably won't convert correctly. Use standard FOR statements."),
+		UNSUPPORTED(Level.ERROR, "{0} are not supported in AS3, your code will probably break now.");
+
+		private final Level level;
+		private final String message;
+
+		private Category(Level level, String message)
+		{
+			this.level = level;
+			this.message = message;
+		}
+
+		/**
+		 * @return the level messages of this category are logged at
+		 */
+		public Level getLevel()
+		{
+			return level;
+		}
+
+		/**
+		 * @return the message pattern
+		 */
+		public String getMessage()
+		{
+			return message;
+		}
+	}
+
+	/**
+	 * A collector that ignores every report.
+	 */
+	public static final Diagnostics DISABLED = new Diagnostics(Mode.OFF);
+
+	private static final Logger logger = Logger.getLogger(Diagnostics.class);
+	private static final Category[] CATEGORIES = Category.values();
+
+	private final Mode mode;
+	private final int[] counts;
+	private List<String> messages = null;
+	private String source = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mode what to keep
+	 */
+	public Diagnostics(Mode mode)
+	{
+		this.mode = mode;
+		this.counts = mode == Mode.OFF ? null : new int[CATEGORIES.length];
+	}
+
+	public void report(Category category)
+	{
+		report(category, null, null, null);
+	}
+
+	public void report(Category category, Object arg0)
+	{
+		report(category, arg0, null, null);
+	}
+
+	public void report(Category category, Object arg0, Object arg1)
+	{
+		report(category, arg0, arg1, null);
+	}
+
+	/**
+	 * Report something. The arguments are only turned into strings in DETAIL mode.
+	 *
+	 * @param category what happened
+	 * @param arg0 replaces {0} in the message
+	 * @param arg1 replaces {1} in the message
+	 * @param arg2 replaces {2} in the message
+	 */
+	public void report(Category category, Object arg0, Object arg1, Object arg2)
+	{
+		if (counts == null)
+		{
+			return;
+		}
+		counts[category.ordinal()]++;
+		if (mode == Mode.DETAIL)
+		{
+			String message = format(category.message, arg0, arg1, arg2);
+			if (messages == null)
+			{
+				messages = new ArrayList<String>();
+			}
+			messages.add(message);
+			if (logger.isEnabledFor(category.level))
+			{
+				logger.log(category.level, source == null ? message : source + ": " + message);
+			}
+		}
+	}
+
+	private static String format(String pattern, Object arg0, Object arg1, Object arg2)
+	{
+		StringBuilder sb = new StringBuilder(pattern.length() + 32);
+		int i = 0;
+		while (i < pattern.length())
+		{
+			char c = pattern.charAt(i);
+			if (c == '{' && i + 2 < pattern.length() && pattern.charAt(i + 2) == '}')
+			{
+				char index = pattern.charAt(i + 1);
+				if (index >= '0' && index <= '2')
+				{
+					sb.append(index == '0' ? arg0 : index == '1' ? arg1 : arg2);
+					i += 3;
+					continue;
+				}
+			}
+			sb.append(c);
+			i++;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Add the counts of another collector to this one. Safe to call from many threads.
+	 *
+	 * @param other a finished collector
+	 */
+	public synchronized void add(Diagnostics other)
+	{
+		if (counts == null || other.counts == null)
+		{
+			return;
+		}
+		for (int i = 0; i < counts.length; i++)
+		{
+			counts[i] += other.counts[i];
+		}
+	}
+
+	/**
+	 * Log the counts, at the highest level of the categories that were reported.
+	 * Logs nothing if nothing was reported.
+	 *
+	 * @param log the logger to use
+	 * @param name what the counts are for, like a file name
+	 */
+	public synchronized void logSummary(Logger log, String name)
+	{
+		if (counts == null)
+		{
+			return;
+		}
+		Level level = null;
+		for (Category category : CATEGORIES)
+		{
+			if (counts[category.ordinal()] > 0 && (level == null || category.level.isGreaterOrEqual(level)))
+			{
+				level = category.level;
+			}
+		}
+		if (level != null && log.isEnabledFor(level))
+		{
+			log.log(level, name + ": " + this);
+		}
+	}
+
+	/**
+	 * @param category a category
+	 * @return how often it was reported
+	 */
+	public synchronized int getCount(Category category)
+	{
+		return counts == null ? 0 : counts[category.ordinal()];
+	}
+
+	/**
+	 * @return the number of reports in all categories
+	 */
+	public synchronized int getTotal()
+	{
+		int total = 0;
+		if (counts != null)
+		{
+			for (int count : counts)
+			{
+				total += count;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @return the messages reported in DETAIL mode, in order. Empty in other modes.
+	 */
+	public List<String> getMessages()
+	{
+		if (messages == null)
+		{
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(messages);
+	}
+
+	/**
+	 * @return the mode
+	 */
+	public Mode getMode()
+	{
+		return mode;
+	}
+
+	/**
+	 * @return true unless the mode is OFF
+	 */
+	public boolean isEnabled()
+	{
+		return counts != null;
+	}
+
+	/**
+	 * @return true in DETAIL mode. Check it before computing an argument that is
+	 *         costly to build.
+	 */
+	public boolean isDetailed()
+	{
+		return mode == Mode.DETAIL;
+	}
+
+	/**
+	 * @return the name the messages are logged with, may be null
+	 */
+	public String getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * @param source the name to log the messages with, like the file name
+	 */
+	public void setSource(String source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * The reported categories with their counts, like "3 TYPE_RENAMED, 1 UNSUPPORTED".
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		if (counts != null)
+		{
+			for (Category category : CATEGORIES)
+			{
+				int count = counts[category.ordinal()];
+				if (count > 0)
+				{
+					if (sb.length() > 0)
+					{
+						sb.append(", ");
+					}
+					sb.append(count).append(' ').append(category);
+				}
+			}
+		}
+		return sb.length() == 0 ? "nothing reported" : sb.toString();
+	}
+}
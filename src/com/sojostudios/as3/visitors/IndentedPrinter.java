@@ -1,26 +1,158 @@
 package com.sojostudios.as3.visitors;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * For printing out indented languages.
+ *
+ * Output is collected in a buffer. If a Writer is given, the buffer is handed
+ * to the Writer in chunks at line ends, so only a small part of the output is
+ * held in memory at any time. Such a buffer is given back to its thread by
+ * flush() and taken up by the next printer, so a batch of files does not grow
+ * a new one for every file.
+ *
+ * The indent of each depth is built once and appended as a whole.
  * 
  * @author Kurtis Kopf
  *
  */
 public class IndentedPrinter
 {
-	private String indentSpace = "\t";
+	private static final int FLUSH_THRESHOLD = 8192;
+	private static final int WRITER_BUFFER_SIZE = FLUSH_THRESHOLD * 2;
+	private static final String[] TABS = indents("\t", 16);
+
+	/**
+	 * The buffers of the last printer on each thread that was done with them.
+	 */
+	private static final ThreadLocal<Spare> spares = new ThreadLocal<Spare>();
+
+	private String[] indentCache = TABS;
 	private int indents = 0;
 	private boolean indented = false;
-	private StringBuilder buffer = new StringBuilder();
+	private StringBuilder buffer = null;
+	private int line = 0;
+	private boolean countingLines = false;
+
+	private Writer out = null;
+	private char[] chunk = null;
+	private IOException error = null;
 	
 	public IndentedPrinter()
 	{
-		
+		buffer = new StringBuilder();
 	}
 	
 	public IndentedPrinter(String indentSpace)
 	{
-		this.indentSpace = indentSpace;
+		this();
+		indentCache = indents(indentSpace, 16);
+	}
+
+	/**
+	 * Collect the output in a buffer big enough for it.
+	 *
+	 * @param expectedLength the expected length of the output, in chars
+	 */
+	public IndentedPrinter(int expectedLength)
+	{
+		buffer = new StringBuilder(Math.max(16, expectedLength));
+	}
+
+	/**
+	 * Print to a Writer instead of collecting the whole output.
+	 *
+	 * @param out the Writer, call {@link #flush()} when done printing.
+	 */
+	public IndentedPrinter(Writer out)
+	{
+		this.out = out;
+		acquire();
+	}
+
+	private static String[] indents(String indentSpace, int depths)
+	{
+		String[] indents = new String[depths];
+		indents[0] = "";
+		for (int i = 1; i < depths; i++)
+		{
+			indents[i] = indents[i - 1] + indentSpace;
+		}
+		return indents;
+	}
+
+	/**
+	 * Take the buffers this thread kept, or make new ones.
+	 */
+	private void acquire()
+	{
+		Spare spare = spares.get();
+		if (spare != null)
+		{
+			spares.set(null);
+			buffer = spare.buffer;
+			chunk = spare.chunk;
+		}
+		else
+		{
+			buffer = new StringBuilder(WRITER_BUFFER_SIZE);
+			chunk = new char[WRITER_BUFFER_SIZE];
+		}
+	}
+
+	/**
+	 * Give the empty buffers to this thread's next printer. A buffer that grew
+	 * for a very long line is left to the garbage collector.
+	 */
+	private void release()
+	{
+		if (buffer.capacity() <= WRITER_BUFFER_SIZE * 4 && spares.get() == null)
+		{
+			spares.set(new Spare(buffer, chunk));
+		}
+		buffer = null;
+		chunk = null;
+	}
+
+	/**
+	 * Make room for output that is about to be printed, like a whole file.
+	 *
+	 * @param length the number of chars expected
+	 */
+	public void ensureCapacity(int length)
+	{
+		if (out == null)
+		{
+			buffer.ensureCapacity(buffer.length() + length);
+		}
+	}
+
+	/**
+	 * Also count the line ends inside printed Strings, like those of comments, so
+	 * that {@link #getLine()} stays exact. Off by default, only source maps need it.
+	 *
+	 * @param countingLines true to count them
+	 */
+	public void setCountingLines(boolean countingLines)
+	{
+		this.countingLines = countingLines;
+	}
+
+	/**
+	 * @return the line being printed, from 0
+	 */
+	public int getLine()
+	{
+		return line;
+	}
+
+	/**
+	 * @param indentSpace the String printed once per indent level, may be empty
+	 */
+	public void setIndentSpace(String indentSpace)
+	{
+		indentCache = "\t".equals(indentSpace) ? TABS : indents(indentSpace, 16);
 	}
 	
 	public void indent()
@@ -35,9 +167,24 @@ public class IndentedPrinter
 	
 	private void makeIndent()
 	{
-		for (int i = 0; i < indents; i++)
+		if (buffer == null)
 		{
-			buffer.append(indentSpace);
+			acquire();
+		}
+		if (indents > 0)
+		{
+			if (indents >= indentCache.length)
+			{
+				String indentSpace = indentCache[1];
+				String[] grown = new String[indents * 2];
+				System.arraycopy(indentCache, 0, grown, 0, indentCache.length);
+				for (int i = indentCache.length; i < grown.length; i++)
+				{
+					grown[i] = grown[i - 1] + indentSpace;
+				}
+				indentCache = grown;
+			}
+			buffer.append(indentCache[indents]);
 		}
 	}
 	
@@ -48,6 +195,56 @@ public class IndentedPrinter
 			makeIndent();
 			indented = true;
 		}
+		else if (buffer == null)
+		{
+			acquire();
+		}
+		buffer.append(arg);
+		if (countingLines)
+		{
+			for (int i = arg.indexOf('\n'); i >= 0; i = arg.indexOf('\n', i + 1))
+			{
+				line++;
+			}
+		}
+	}
+
+	/**
+	 * Print part of a String without taking a substring.
+	 *
+	 * @param arg the String
+	 * @param start the index of the first char
+	 * @param end the index after the last char
+	 */
+	public void print(String arg, int start, int end)
+	{
+		if (start == end)
+		{
+			return;
+		}
+		if (!indented)
+		{
+			makeIndent();
+			indented = true;
+		}
+		else if (buffer == null)
+		{
+			acquire();
+		}
+		buffer.append(arg, start, end);
+	}
+
+	public void print(char arg)
+	{
+		if (!indented)
+		{
+			makeIndent();
+			indented = true;
+		}
+		else if (buffer == null)
+		{
+			acquire();
+		}
 		buffer.append(arg);
 	}
 	
@@ -59,13 +256,97 @@ public class IndentedPrinter
 	
 	public void printLn()
 	{
-		buffer.append("\n");
+		if (buffer == null)
+		{
+			acquire();
+		}
+		buffer.append('\n');
 		indented = false;
+		line++;
+		if (out != null && buffer.length() >= FLUSH_THRESHOLD)
+		{
+			drain();
+		}
 	}
 	
+	/**
+	 * Hand everything printed so far to the Writer and flush it. The buffers go back
+	 * to the thread until something more is printed.
+	 *
+	 * @throws IOException the first error the Writer reported while printing
+	 */
+	public void flush() throws IOException
+	{
+		if (out != null)
+		{
+			if (buffer != null)
+			{
+				drain();
+				release();
+			}
+			if (error == null)
+			{
+				try
+				{
+					out.flush();
+				}
+				catch (IOException ioe)
+				{
+					error = ioe;
+				}
+			}
+			if (error != null)
+			{
+				throw error;
+			}
+		}
+	}
+
+	/**
+	 * Move the buffer contents to the Writer. Errors are kept until flush(), so the
+	 * print methods don't need to declare them.
+	 */
+	private void drain()
+	{
+		int length = buffer.length();
+		if (error == null)
+		{
+			try
+			{
+				for (int start = 0; start < length; start += chunk.length)
+				{
+					int end = Math.min(length, start + chunk.length);
+					buffer.getChars(start, end, chunk, 0);
+					out.write(chunk, 0, end - start);
+				}
+			}
+			catch (IOException ioe)
+			{
+				error = ioe;
+			}
+		}
+		buffer.setLength(0);
+	}
+
+	/**
+	 * @return everything printed so far, or only the part not yet handed to the
+	 *         Writer if one was given.
+	 */
 	@Override
 	public String toString()
 	{
-		return buffer.toString();
+		return buffer == null ? "" : buffer.toString();
+	}
+
+	private static class Spare
+	{
+		private final StringBuilder buffer;
+		private final char[] chunk;
+
+		private Spare(StringBuilder buffer, char[] chunk)
+		{
+			this.buffer = buffer;
+			this.chunk = chunk;
+		}
 	}
 }
\ No newline at end of file
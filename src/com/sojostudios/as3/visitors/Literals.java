@@ -0,0 +1,193 @@
+package com.sojostudios.as3.visitors;
+
+/**
+ * Prints Java literals as AS3 literals, straight from their source text into an
+ * IndentedPrinter. Most literals are printed as they are, or up to their type
+ * suffix, without building a new String.
+ *
+ * - int and long: the L suffix and underscores are dropped. Hex is kept, octal and
+ *   binary are printed as hex, which AS3 reads with the same bits.
+ * - float and double: the F or D suffix and underscores are dropped. Hex floating
+ *   point is printed as its decimal value.
+ * - char and String: printed in double quotes. An unescaped double quote is escaped
+ *   and octal escapes become \x escapes, AS3 has neither char literals nor octal
+ *   escapes. Unicode escapes are already resolved by the parser.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+final class Literals
+{
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private Literals()
+	{
+	}
+
+	/**
+	 * Print an int or long literal, including the negative minimum values.
+	 *
+	 * @param printer the printer
+	 * @param value the literal as written in the source
+	 */
+	static void printInteger(IndentedPrinter printer, String value)
+	{
+		int end = value.length();
+		char last = value.charAt(end - 1);
+		if (last == 'l' || last == 'L')
+		{
+			end--;
+		}
+		int start = value.charAt(0) == '-' ? 1 : 0;
+		if (end - start > 1 && value.charAt(start) == '0')
+		{
+			char radix = value.charAt(start + 1);
+			if (radix == 'x' || radix == 'X')
+			{
+				printDigits(printer, value, 0, end);
+			}
+			else if (radix == 'b' || radix == 'B')
+			{
+				printAsHex(printer, value, start, start + 2, end, 1);
+			}
+			else
+			{
+				printAsHex(printer, value, start, start + 1, end, 3);
+			}
+			return;
+		}
+		printDigits(printer, value, 0, end);
+	}
+
+	/**
+	 * Print a float or double literal.
+	 *
+	 * @param printer the printer
+	 * @param value the literal as written in the source
+	 */
+	static void printDouble(IndentedPrinter printer, String value)
+	{
+		if (value.length() > 1 && value.charAt(0) == '0' && (value.charAt(1) == 'x' || value.charAt(1) == 'X'))
+		{
+			// hex floating point, rare enough to go through Double
+			printer.print(String.valueOf(Double.parseDouble(value.replace("_", ""))));
+			return;
+		}
+		int end = value.length();
+		char last = value.charAt(end - 1);
+		if (last == 'f' || last == 'F' || last == 'd' || last == 'D')
+		{
+			end--;
+		}
+		printDigits(printer, value, 0, end);
+	}
+
+	/**
+	 * Print a char or String literal as an AS3 String.
+	 *
+	 * @param printer the printer
+	 * @param value the literal as written in the source, without its quotes
+	 */
+	static void printString(IndentedPrinter printer, String value)
+	{
+		printer.print('"');
+		int length = value.length();
+		int from = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < length)
+			{
+				char next = value.charAt(i + 1);
+				if (next < '0' || next > '7')
+				{
+					// \n, \t, \", \' and \\ mean the same in AS3
+					i++;
+					continue;
+				}
+				// octal escape, up to \377
+				int digits = next <= '3' ? 3 : 2;
+				int j = i + 1;
+				int code = 0;
+				while (j < length && j - i <= digits && value.charAt(j) >= '0' && value.charAt(j) <= '7')
+				{
+					code = code * 8 + value.charAt(j) - '0';
+					j++;
+				}
+				printer.print(value, from, i);
+				printer.print("\\x");
+				printer.print(HEX_DIGITS[code >> 4]);
+				printer.print(HEX_DIGITS[code & 0xf]);
+				from = j;
+				i = j - 1;
+			}
+			else if (c == '"')
+			{
+				// only happens in a char literal, '"'
+				printer.print(value, from, i);
+				printer.print("\\\"");
+				from = i + 1;
+			}
+			else if (c == '\u2028' || c == '\u2029')
+			{
+				// line terminators in AS3, from a unicode escape in the Java source
+				printer.print(value, from, i);
+				printer.print(c == '\u2028' ? "\\u2028" : "\\u2029");
+				from = i + 1;
+			}
+		}
+		printer.print(value, from, length);
+		printer.print('"');
+	}
+
+	/**
+	 * Print part of a numeric literal, leaving out underscores.
+	 */
+	private static void printDigits(IndentedPrinter printer, String value, int start, int end)
+	{
+		int from = start;
+		for (int i = value.indexOf('_', start); i >= 0 && i < end; i = value.indexOf('_', i + 1))
+		{
+			printer.print(value, from, i);
+			from = i + 1;
+		}
+		printer.print(value, from, end);
+	}
+
+	/**
+	 * Print an octal or binary literal as hex.
+	 *
+	 * @param signEnd the index after the minus sign, if any
+	 * @param digitStart the index of the first digit, after the prefix
+	 * @param end the index after the last digit
+	 * @param bitsPerDigit 3 for octal, 1 for binary
+	 */
+	private static void printAsHex(IndentedPrinter printer, String value, int signEnd, int digitStart, int end, int bitsPerDigit)
+	{
+		long bits = 0;
+		for (int i = digitStart; i < end; i++)
+		{
+			char c = value.charAt(i);
+			if (c != '_')
+			{
+				bits = bits << bitsPerDigit | (c - '0');
+			}
+		}
+		printer.print(value, 0, signEnd);
+		if (bits == 0)
+		{
+			printer.print('0');
+			return;
+		}
+		printer.print("0x");
+		int shift = 60;
+		while ((bits >>> shift & 0xf) == 0)
+		{
+			shift -= 4;
+		}
+		for (; shift >= 0; shift -= 4)
+		{
+			printer.print(HEX_DIGITS[(int)(bits >>> shift & 0xf)]);
+		}
+	}
+}
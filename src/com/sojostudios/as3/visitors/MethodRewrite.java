@@ -0,0 +1,24 @@
+package com.sojostudios.as3.visitors;
+
+import japa.parser.ast.Node;
+import japa.parser.ast.expr.MethodCallExpr;
+
+/**
+ * Rewrites a method call on a tracked variable, like list.size() to list.length.
+ * Rewrites are registered in a MethodRewrites table.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public interface MethodRewrite
+{
+	/**
+	 * Rewrite a method call. The call may be changed in place.
+	 *
+	 * @param call the method call, its scope is the variable
+	 * @param mut the variable the method is called on
+	 * @return the node replacing the call, it is not visited any further. null to
+	 *         go on visiting the call and its arguments.
+	 */
+	public Node rewrite(MethodCallExpr call, VarMutation mut);
+}
@@ -0,0 +1,363 @@
+package com.sojostudios.as3.visitors;
+
+import japa.parser.ast.Node;
+import japa.parser.ast.expr.ArrayAccessExpr;
+import japa.parser.ast.expr.AssignExpr;
+import japa.parser.ast.expr.AssignExpr.Operator;
+import japa.parser.ast.expr.BinaryExpr;
+import japa.parser.ast.expr.Expression;
+import japa.parser.ast.expr.FieldAccessExpr;
+import japa.parser.ast.expr.IntegerLiteralExpr;
+import japa.parser.ast.expr.MethodCallExpr;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The method call rewrites of the mutation visitor, keyed by the kind of variable,
+ * the method name and the number of arguments. A call is looked up with a few hash
+ * lookups, however many rewrites are registered.
+ *
+ * The kind of a variable is either its type name, like "String", or one of its
+ * MutationFlags, like Array or Dictionary. Type rewrites are tried first, then the
+ * flags from the lowest bit up. For each kind a rewrite for the exact number of
+ * arguments is preferred over one registered with ANY_ARITY.
+ *
+ * Extra rewrites can be registered without subclassing the visitor, for example:
+ *
+ * <pre>
+ * rewrites.addFlagRewrite(MutationFlags.COLLECTION, "isEmpty", 0, new MethodRewrite()
+ * {
+ *     public Node rewrite(MethodCallExpr call, VarMutation mut)
+ *     {
+ *         FieldAccessExpr length = new FieldAccessExpr(call.getScope(), "length");
+ *         return new BinaryExpr(length, new IntegerLiteralExpr("0"), BinaryExpr.Operator.equals);
+ *     }
+ * });
+ * </pre>
+ *
+ * A rewrite registered for a key that is already taken replaces the old one, so the
+ * built-in rewrites can be overridden as well.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class MethodRewrites
+{
+	/**
+	 * Matches a call with any number of arguments.
+	 */
+	public static final int ANY_ARITY = -1;
+
+	private final Map<Key,MethodRewrite> table;
+
+	/**
+	 * Create an empty table.
+	 */
+	public MethodRewrites()
+	{
+		table = new LinkedHashMap<Key,MethodRewrite>();
+	}
+
+	/**
+	 * Copy a table.
+	 *
+	 * @param source the rewrites to copy
+	 */
+	public MethodRewrites(MethodRewrites source)
+	{
+		this();
+		addAll(source);
+	}
+
+	private MethodRewrites(Map<Key,MethodRewrite> table)
+	{
+		this.table = table;
+	}
+
+	/**
+	 * @return an unmodifiable copy of this table
+	 */
+	MethodRewrites freeze()
+	{
+		return new MethodRewrites(Collections.unmodifiableMap(new LinkedHashMap<Key,MethodRewrite>(table)));
+	}
+
+	/**
+	 * Add the rewrites the visitor has always done: String equals() and length(),
+	 * and put(), add(), get(), remove() and size() on Arrays, Dictionaries and
+	 * Vectors.
+	 *
+	 * @return this table
+	 */
+	public MethodRewrites includeBuiltIns()
+	{
+		addTypeRewrite("String", "equals", 1, STRING_EQUALS);
+		addTypeRewrite("String", "length", 0, STRING_LENGTH);
+		addFlagRewrite(MutationFlags.COLLECTION, "put", 2, PUT);
+		addFlagRewrite(MutationFlags.COLLECTION, "add", ANY_ARITY, ADD);
+		addFlagRewrite(MutationFlags.COLLECTION, "get", 1, GET);
+		addFlagRewrite(MutationFlags.COLLECTION, "remove", 1, REMOVE);
+		addFlagRewrite(MutationFlags.COLLECTION, "size", ANY_ARITY, SIZE);
+		return this;
+	}
+
+	/**
+	 * Register a rewrite for variables of a type.
+	 *
+	 * @param typeName the type name of the variable, as it is after mutation
+	 * @param method the method name
+	 * @param arity the number of arguments, or ANY_ARITY
+	 * @param rewrite the rewrite
+	 */
+	public void addTypeRewrite(String typeName, String method, int arity, MethodRewrite rewrite)
+	{
+		table.put(new Key(typeName, method, arity), rewrite);
+	}
+
+	/**
+	 * Register a rewrite for variables with any of some mutation flags.
+	 *
+	 * @param flags one or more MutationFlags bits
+	 * @param method the method name
+	 * @param arity the number of arguments, or ANY_ARITY
+	 * @param rewrite the rewrite
+	 */
+	public void addFlagRewrite(int flags, String method, int arity, MethodRewrite rewrite)
+	{
+		for (int bit = 0; bit < 32; bit++)
+		{
+			if ((flags & (1 << bit)) != 0)
+			{
+				table.put(new Key(Integer.valueOf(1 << bit), method, arity), rewrite);
+			}
+		}
+	}
+
+	/**
+	 * Register a rewrite for variables with a mutation flag, registering the flag
+	 * if it is new.
+	 *
+	 * @param flag the flag name
+	 * @param method the method name
+	 * @param arity the number of arguments, or ANY_ARITY
+	 * @param rewrite the rewrite
+	 */
+	public void addFlagRewrite(String flag, String method, int arity, MethodRewrite rewrite)
+	{
+		addFlagRewrite(MutationFlags.register(flag), method, arity, rewrite);
+	}
+
+	/**
+	 * Add all rewrites of another table, replacing rewrites with the same key.
+	 *
+	 * @param other the rewrites to add
+	 */
+	public void addAll(MethodRewrites other)
+	{
+		table.putAll(other.table);
+	}
+
+	/**
+	 * Find the rewrite for a method call.
+	 *
+	 * @param mut the variable the method is called on
+	 * @param method the method name
+	 * @param arity the number of arguments
+	 * @return the rewrite, or null if there is none
+	 */
+	public MethodRewrite find(VarMutation mut, String method, int arity)
+	{
+		if (table.isEmpty())
+		{
+			return null;
+		}
+		MethodRewrite rewrite = null;
+		if (mut.type != null)
+		{
+			rewrite = find(mut.type.getName(), method, arity);
+		}
+		int flags = mut.mutationFlags;
+		while (rewrite == null && flags != 0)
+		{
+			int bit = Integer.lowestOneBit(flags);
+			flags &= ~bit;
+			rewrite = find(Integer.valueOf(bit), method, arity);
+		}
+		return rewrite;
+	}
+
+	private MethodRewrite find(Object kind, String method, int arity)
+	{
+		MethodRewrite rewrite = table.get(new Key(kind, method, arity));
+		if (rewrite == null)
+		{
+			rewrite = table.get(new Key(kind, method, ANY_ARITY));
+		}
+		return rewrite;
+	}
+
+	/**
+	 * @return the number of rewrites
+	 */
+	public int size()
+	{
+		return table.size();
+	}
+
+	/**
+	 * Lists the keys with the class of their rewrite, stable from run to run.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("[");
+		for (Map.Entry<Key,MethodRewrite> entry : table.entrySet())
+		{
+			if (sb.length() > 1)
+			{
+				sb.append(", ");
+			}
+			sb.append(entry.getKey()).append('=').append(entry.getValue().getClass().getName());
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * A type name (String) or a flag bit (Integer), with a method name and arity.
+	 */
+	private static final class Key
+	{
+		private final Object kind;
+		private final String method;
+		private final int arity;
+		private final int hash;
+
+		private Key(Object kind, String method, int arity)
+		{
+			this.kind = kind;
+			this.method = method;
+			this.arity = arity;
+			this.hash = (kind.hashCode() * 31 + method.hashCode()) * 31 + arity;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key)obj;
+			return hash == other.hash && arity == other.arity && method.equals(other.method) && kind.equals(other.kind);
+		}
+
+		@Override
+		public String toString()
+		{
+			String kindName = kind instanceof Integer ? MutationFlags.names((Integer)kind).toString() : kind.toString();
+			return kindName + "." + method + "/" + (arity == ANY_ARITY ? "*" : String.valueOf(arity));
+		}
+	}
+
+	// string mutations (.equals() to == [BinaryExpr])
+	private static final MethodRewrite STRING_EQUALS = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			Expression right = call.getArgs().get(0);
+			return new BinaryExpr(call.getScope(), right, BinaryExpr.Operator.equals);
+		}
+	};
+
+	private static final MethodRewrite STRING_LENGTH = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			return new FieldAccessExpr(call.getScope(), "length");
+		}
+	};
+
+	// put(a, b) -> [a]=b;
+	private static final MethodRewrite PUT = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			// replace with AssignmentExpr with ArrayAccessExpr and B expression
+			Expression arg1 = call.getArgs().get(0);
+			Expression right = call.getArgs().get(1);
+			ArrayAccessExpr left = new ArrayAccessExpr(call.getScope(), arg1);
+			return new AssignExpr(left, right, Operator.assign);
+		}
+	};
+
+	// add(a) -> push(a);
+	private static final MethodRewrite ADD = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			// replace method name with "push"
+			call.setName("push");
+			return call;
+		}
+	};
+
+	// get(a) -> [a];
+	private static final MethodRewrite GET = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			// replace with ArrayAccessExpr
+			Expression arg1 = call.getArgs().get(0);
+			return new ArrayAccessExpr(call.getScope(), arg1);
+		}
+	};
+
+	// remove(a) -> splice(a, 1) or delete [a], the arguments are visited afterwards
+	private static final MethodRewrite REMOVE = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			if (mut.hasFlag(MutationFlags.ARRAY | MutationFlags.VECTOR))
+			{
+				// convert to splice(arg0, 1)
+				call.setName("splice");
+				call.getArgs().add(new IntegerLiteralExpr("1"));
+			}
+			else if (mut.hasFlag(MutationFlags.DICTIONARY))
+			{
+				// convert to delete method, dump visitor will have to convert to delete dict[key]
+				call.setName("!delete");
+				Expression arg1 = call.getArgs().get(0);
+				ArrayAccessExpr expr = new ArrayAccessExpr(call.getScope(), arg1);
+				call.getArgs().clear();
+				call.getArgs().add(expr);
+			}
+			return null;
+		}
+	};
+
+	// size() -> length;
+	private static final MethodRewrite SIZE = new MethodRewrite()
+	{
+		@Override
+		public Node rewrite(MethodCallExpr call, VarMutation mut)
+		{
+			// replace with a FieldAccessExpr
+			return new FieldAccessExpr(call.getScope(), "length");
+		}
+	};
+}
@@ -0,0 +1,120 @@
+package com.sojostudios.as3.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The complete, frozen configuration of an AS3MutationVisitor: the compiled rules,
+ * the method call rewrites, the forced imports, the Sprite/MovieClip options and
+ * the Array, Dictionary and Vector class names.
+ *
+ * A MutationConfig never changes and can be shared by any number of threads. Each
+ * compilation creates a visitor from it with {@link AS3MutationVisitor#AS3MutationVisitor(MutationConfig)},
+ * which only adds the state of one run.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class MutationConfig
+{
+	private final MutationRules rules;
+	private final List<String> forcedImports;
+	final List<String> importsToAdd;
+	private final boolean forceSprite;
+	private final boolean forceMovieClip;
+	private final String arrayClass;
+	private final String dictionaryClass;
+	private final String vectorClass;
+	private final MethodRewrites methodRewrites;
+	private final TypeClassifier classifier;
+
+	/**
+	 * Freeze the current options of a visitor.
+	 *
+	 * @param source the visitor to take the options from
+	 */
+	public MutationConfig(AS3MutationVisitor source)
+	{
+		rules = new MutationRules(source);
+		List<String> imports = new ArrayList<String>();
+		if (source.getForcedImports() != null)
+		{
+			imports.addAll(source.getForcedImports());
+		}
+		forcedImports = Collections.unmodifiableList(new ArrayList<String>(imports));
+		if (source.isForceSprite())
+		{
+			imports.add("flash.display.Sprite");
+		}
+		if (source.isForceMovieClip())
+		{
+			imports.add("flash.display.MovieClip");
+		}
+		importsToAdd = Collections.unmodifiableList(imports);
+		forceSprite = source.isForceSprite();
+		forceMovieClip = source.isForceMovieClip();
+		arrayClass = source.getArrayClass();
+		dictionaryClass = source.getDictionaryClass();
+		vectorClass = source.getVectorClass();
+		methodRewrites = source.getMethodRewrites() == null ? new MethodRewrites() : source.getMethodRewrites().freeze();
+		classifier = new TypeClassifier(this, TypeClassifier.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @return the rules
+	 */
+	public MutationRules getRules()
+	{
+		return rules;
+	}
+
+	/**
+	 * @return the cache of type name classifications under these options
+	 */
+	public TypeClassifier getClassifier()
+	{
+		return classifier;
+	}
+
+	/**
+	 * @return the method call rewrites, unmodifiable
+	 */
+	public MethodRewrites getMethodRewrites()
+	{
+		return methodRewrites;
+	}
+
+	/**
+	 * @return the forcedImports
+	 */
+	public List<String> getForcedImports()
+	{
+		return forcedImports;
+	}
+
+	public boolean isForceSprite()
+	{
+		return forceSprite;
+	}
+
+	public boolean isForceMovieClip()
+	{
+		return forceMovieClip;
+	}
+
+	public String getArrayClass()
+	{
+		return arrayClass;
+	}
+
+	public String getDictionaryClass()
+	{
+		return dictionaryClass;
+	}
+
+	public String getVectorClass()
+	{
+		return vectorClass;
+	}
+}
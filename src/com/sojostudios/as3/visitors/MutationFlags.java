@@ -0,0 +1,94 @@
+package com.sojostudios.as3.visitors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mutation flags of tracked variables, stored as the bits of an int so checking a
+ * flag is a bit test. Array, Dictionary and Vector are built in, more flags can be
+ * registered by name, up to 32 in total.
+ * 
+ * @author Kurtis Kopf
+ *
+ */
+public class MutationFlags
+{
+	public static final int ARRAY = 1;
+	public static final int DICTIONARY = 1 << 1;
+	public static final int VECTOR = 1 << 2;
+	
+	/**
+	 * Any of the collection conversions.
+	 */
+	public static final int COLLECTION = ARRAY | DICTIONARY | VECTOR;
+	
+	private static final Map<String,Integer> bits = new ConcurrentHashMap<String,Integer>();
+	private static final String[] names = new String[32];
+	private static int count = 0;
+	
+	static
+	{
+		register(AS3MutationVisitor.ARRAY_MUTATION_FLAG);
+		register(AS3MutationVisitor.DICTIONARY_MUTATION_FLAG);
+		register(AS3MutationVisitor.VECTOR_MUTATION_FLAG);
+	}
+	
+	private MutationFlags()
+	{
+		
+	}
+	
+	/**
+	 * Register a flag. Registering a name again returns the same bit.
+	 * 
+	 * @param name the flag name
+	 * @return the bit of the flag
+	 * @throws IllegalStateException if all 32 bits are taken
+	 */
+	public static synchronized int register(String name)
+	{
+		Integer bit = bits.get(name);
+		if (bit != null)
+		{
+			return bit;
+		}
+		if (count == names.length)
+		{
+			throw new IllegalStateException("No more than " + names.length + " mutation flags can be registered");
+		}
+		names[count] = name;
+		bit = 1 << count;
+		count++;
+		bits.put(name, bit);
+		return bit;
+	}
+	
+	/**
+	 * @param name the flag name
+	 * @return the bit of a registered flag, 0 if the name is not registered
+	 */
+	public static int bit(String name)
+	{
+		Integer bit = bits.get(name);
+		return bit == null ? 0 : bit;
+	}
+	
+	/**
+	 * @param flags flag bits
+	 * @return the names of the flags that are set
+	 */
+	public static List<String> names(int flags)
+	{
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < names.length; i++)
+		{
+			if ((flags & (1 << i)) != 0)
+			{
+				result.add(names[i]);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,141 @@
+package com.sojostudios.as3.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A frozen copy of the rule maps and lists of an AS3MutationVisitor, each compiled
+ * to a RuleSet. Once built it never changes, so any number of visitors on any number
+ * of threads can share it.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class MutationRules
+{
+	private final Map<String,String> packageToPackage;
+	private final Map<String,String> classesToClasses;
+	private final Map<String,String> importsToImports;
+	private final List<String> importsToIgnore;
+	private final List<String> classesToArrays;
+	private final List<String> classesToDictionaries;
+	private final List<String> classesToVectors;
+	private final List<String> classesExtendArray;
+	private final List<String> classesExtendDictionary;
+	private final List<String> classesExtendVector;
+
+	final RuleSet packageRules;
+	final RuleSet classRules;
+	final RuleSet importRules;
+	final RuleSet ignoredImports;
+	final RuleSet arrayRules;
+	final RuleSet dictionaryRules;
+	final RuleSet vectorRules;
+	final RuleSet extendArrayRules;
+	final RuleSet extendDictionaryRules;
+	final RuleSet extendVectorRules;
+
+	/**
+	 * Freeze the current rules of a visitor.
+	 *
+	 * @param source the visitor to take the rules from
+	 */
+	public MutationRules(AS3MutationVisitor source)
+	{
+		packageToPackage = freeze(source.getPackageToPackage());
+		classesToClasses = freeze(source.getClassesToClasses());
+		importsToImports = freeze(source.getImportsToImports());
+		importsToIgnore = freeze(source.getImportsToIgnore());
+		classesToArrays = freeze(source.getClassesToArrays());
+		classesToDictionaries = freeze(source.getClassesToDictionaries());
+		classesToVectors = freeze(source.getClassesToVectors());
+		classesExtendArray = freeze(source.getClassesExtendArray());
+		classesExtendDictionary = freeze(source.getClassesExtendDictionary());
+		classesExtendVector = freeze(source.getClassesExtendVector());
+
+		packageRules = new RuleSet(packageToPackage);
+		classRules = new RuleSet(classesToClasses);
+		importRules = new RuleSet(importsToImports);
+		ignoredImports = new RuleSet(importsToIgnore);
+		arrayRules = new RuleSet(classesToArrays);
+		dictionaryRules = new RuleSet(classesToDictionaries);
+		vectorRules = new RuleSet(classesToVectors);
+		extendArrayRules = new RuleSet(classesExtendArray);
+		extendDictionaryRules = new RuleSet(classesExtendDictionary);
+		extendVectorRules = new RuleSet(classesExtendVector);
+	}
+
+	/**
+	 * Copy a map, keeping its iteration order, which is the order its rules apply in.
+	 */
+	private static Map<String,String> freeze(Map<String,String> map)
+	{
+		if (map == null)
+		{
+			return Collections.emptyMap();
+		}
+		return Collections.unmodifiableMap(new LinkedHashMap<String,String>(map));
+	}
+
+	private static List<String> freeze(List<String> list)
+	{
+		if (list == null)
+		{
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<String>(list));
+	}
+
+	public Map<String, String> getPackageToPackage()
+	{
+		return packageToPackage;
+	}
+
+	public Map<String, String> getClassesToClasses()
+	{
+		return classesToClasses;
+	}
+
+	public Map<String, String> getImportsToImports()
+	{
+		return importsToImports;
+	}
+
+	public List<String> getImportsToIgnore()
+	{
+		return importsToIgnore;
+	}
+
+	public List<String> getClassesToArrays()
+	{
+		return classesToArrays;
+	}
+
+	public List<String> getClassesToDictionaries()
+	{
+		return classesToDictionaries;
+	}
+
+	public List<String> getClassesToVectors()
+	{
+		return classesToVectors;
+	}
+
+	public List<String> getClassesExtendArray()
+	{
+		return classesExtendArray;
+	}
+
+	public List<String> getClassesExtendDictionary()
+	{
+		return classesExtendDictionary;
+	}
+
+	public List<String> getClassesExtendVector()
+	{
+		return classesExtendVector;
+	}
+}
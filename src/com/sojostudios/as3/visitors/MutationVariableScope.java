@@ -11,60 +11,79 @@ import java.util.Map;
  * This class keeps track of variable scopes and mutation flags for those variables
  * at each scope.
  * 
+ * All scopes share one map holding the visible variable for each name, so a lookup
+ * costs the same at any depth. A variable declared in an inner scope shadows the
+ * outer one and keeps a link to it, and the names declared in each scope are logged
+ * so leaving the scope can restore what they shadowed. Entering and leaving a scope
+ * that declares nothing allocates nothing.
+ * 
  * @author Kurtis Kopf
  *
  */
 public class MutationVariableScope
 {
 	private int scopeDepth = 0;
-	private List<Map<String,VarMutation>> scope = new ArrayList<Map<String,VarMutation>>();
+	private Map<String,VarMutation> visible = null;
+	
+	// names declared per scope, scopeStart[depth] is where a scope's names begin
+	private List<String> declared = new ArrayList<String>();
+	private int[] scopeStart = new int[16];
 	
 	public MutationVariableScope()
 	{
-		// depth 0 map
-		scope.add(new HashMap<String,VarMutation>());
+		
 	}
 	
 	/**
-	 * Increases the scope depth and creates a new scope container.
+	 * Increases the scope depth.
 	 */
 	public void pushScopeStack()
 	{
 		scopeDepth++;
-		scope.add(new HashMap<String,VarMutation>());
+		if (scopeDepth == scopeStart.length)
+		{
+			int[] grown = new int[scopeStart.length * 2];
+			System.arraycopy(scopeStart, 0, grown, 0, scopeStart.length);
+			scopeStart = grown;
+		}
+		scopeStart[scopeDepth] = declared.size();
 	}
 	
 	/**
-	 * Decreases the scope depth and destroys the current scope container.
+	 * Decreases the scope depth and forgets the variables of the current scope.
 	 */
 	public void popScopeStack()
 	{
-		scope.remove(scopeDepth);
-		scopeDepth--;
-		if (scopeDepth < 0)
+		if (scopeDepth == 0)
 		{
 			throw new RuntimeException("Stack underflow exception from Scope Stack!");
 		}
+		int start = scopeStart[scopeDepth];
+		for (int i = declared.size() - 1; i >= start; i--)
+		{
+			String name = declared.remove(i);
+			VarMutation mut = visible.get(name);
+			if (mut.shadowed != null)
+			{
+				visible.put(name, mut.shadowed);
+			}
+			else
+			{
+				visible.remove(name);
+			}
+		}
+		scopeDepth--;
 	}
 	
 	/**
-	 * Get a variable mutation. Looks up through the scope stack until the variable is found.
+	 * Get a variable mutation. Finds the variable of the innermost scope declaring the name.
 	 * 
 	 * @param name the variable name.
 	 * @return the corresponding VarMutation or null if the variable was not found
 	 */
 	public VarMutation getVar(String name)
 	{
-		// look at current level and up the stack until we find a matching name.
-		for (int depth = scopeDepth; depth >= 0; depth--)
-		{
-			VarMutation temp = scope.get(depth).get(name);
-			if (temp != null)
-			{
-				return temp;
-			}
-		}
-		return null;
+		return visible == null ? null : visible.get(name);
 	}
 	
 	/**
@@ -75,7 +94,8 @@ public class MutationVariableScope
 	 */
 	public VarMutation getVarCurScopeOnly(String name)
 	{
-		return scope.get(scopeDepth).get(name);
+		VarMutation mut = getVar(name);
+		return mut != null && mut.depth == scopeDepth ? mut : null;
 	}
 	
 	/**
@@ -86,14 +106,55 @@ public class MutationVariableScope
 	 * @param mutationFlags the TRUE flags for mutations (Array, Dictionary by default)
 	 */
 	public void addVar(String name, ClassOrInterfaceType type, List<String> mutationFlags)
+	{
+		int flags = 0;
+		if (mutationFlags != null)
+		{
+			for (String flag : mutationFlags)
+			{
+				flags |= MutationFlags.register(flag);
+			}
+		}
+		addVar(name, type, flags);
+	}
+	
+	/**
+	 * Add a variable with mutation tracking.
+	 * 
+	 * @param name the variable name in this scope
+	 * @param type the class type of the variable
+	 * @param mutationFlags the MutationFlags bits that are set
+	 */
+	public void addVar(String name, ClassOrInterfaceType type, int mutationFlags)
 	{
 		VarMutation mut = new VarMutation();
 		mut.name = name;
 		mut.type = type;
-		if (mutationFlags != null)
+		mut.mutationFlags = mutationFlags;
+		mut.depth = scopeDepth;
+		
+		if (visible == null)
+		{
+			visible = new HashMap<String,VarMutation>();
+		}
+		VarMutation current = visible.put(name, mut);
+		if (current != null && current.depth == scopeDepth)
+		{
+			// declared again in the same scope, replaces the first one
+			mut.shadowed = current.shadowed;
+		}
+		else
 		{
-			mut.mutationFlags.addAll(mutationFlags);
+			mut.shadowed = current;
+			declared.add(name);
 		}
-		scope.get(scopeDepth).put(name, mut);
+	}
+	
+	/**
+	 * @return the current scope depth
+	 */
+	public int getScopeDepth()
+	{
+		return scopeDepth;
 	}
 }
@@ -0,0 +1,47 @@
+package com.sojostudios.as3.visitors;
+
+/**
+ * How AS3DumpVisitor lays out the code it prints.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public enum OutputProfile
+{
+	/**
+	 * Readable AS3: javadoc and comments, indented with tabs, a blank line between
+	 * members.
+	 */
+	STANDARD("\t", true),
+	/**
+	 * For release builds: no javadoc or comments, no indentation and no blank
+	 * lines. Every statement still starts on its own line, so compiler errors,
+	 * stack traces and source maps keep pointing at single statements.
+	 */
+	COMPACT("", false);
+
+	private final String indent;
+	private final boolean comments;
+
+	private OutputProfile(String indent, boolean comments)
+	{
+		this.indent = indent;
+		this.comments = comments;
+	}
+
+	/**
+	 * @return the String printed once per indent level
+	 */
+	public String getIndent()
+	{
+		return indent;
+	}
+
+	/**
+	 * @return true to print javadoc, comments and blank lines
+	 */
+	public boolean isComments()
+	{
+		return comments;
+	}
+}
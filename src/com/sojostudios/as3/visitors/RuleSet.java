@@ -0,0 +1,360 @@
+package com.sojostudios.as3.visitors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A list of mutation rules, compiled once. Each rule is a regular expression that
+ * has to match a whole name, like String.matches, optionally with a replacement value.
+ *
+ * Most rules are plain names like "ArrayList" or "java.util.ArrayList". These are
+ * found with a hash lookup instead of a regex match. A '.' in such a name still
+ * matches any character, as it would in the regex. Only the remaining rules are
+ * run as precompiled Patterns, behind one combined Pattern that rejects names
+ * matching none of them in a single pass.
+ *
+ * Results list the matching rules in their original order, so the visitor applies
+ * them exactly like the String.matches loops did.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class RuleSet
+{
+	private static final int[] NONE = new int[0];
+
+	private final String[] values;
+
+	/** plain names without '.', to rule indexes */
+	private final Map<String,int[]> exact = new HashMap<String,int[]>();
+	/** plain names with '.', by length */
+	private final Map<Integer,int[]> dotted = new HashMap<Integer,int[]>();
+	private final String[] patterns;
+
+	private final int[] regexIndexes;
+	private final Pattern[] regexes;
+	private final Pattern combined;
+
+	/**
+	 * Compile a list of rules without values.
+	 *
+	 * @param rules the regular expressions
+	 */
+	public RuleSet(Collection<String> rules)
+	{
+		this(rules, null);
+	}
+
+	/**
+	 * Compile a map of rules to replacement values, in the map's iteration order.
+	 *
+	 * @param rules the regular expressions with their values
+	 */
+	public RuleSet(Map<String,String> rules)
+	{
+		this(rules.keySet(), rules);
+	}
+
+	private RuleSet(Collection<String> rules, Map<String,String> valueMap)
+	{
+		patterns = rules.toArray(new String[rules.size()]);
+		values = new String[patterns.length];
+
+		Map<String,List<Integer>> exactLists = new HashMap<String,List<Integer>>();
+		Map<Integer,List<Integer>> dottedLists = new HashMap<Integer,List<Integer>>();
+		List<Integer> regexList = new ArrayList<Integer>();
+		StringBuilder alternation = new StringBuilder();
+		boolean combinable = true;
+		for (int i = 0; i < patterns.length; i++)
+		{
+			String rule = patterns[i];
+			if (valueMap != null)
+			{
+				values[i] = valueMap.get(rule);
+			}
+
+			int kind = classify(rule);
+			if (kind == PLAIN)
+			{
+				add(exactLists, rule, i);
+			}
+			else if (kind == DOTTED)
+			{
+				add(dottedLists, rule.length(), i);
+			}
+			else
+			{
+				regexList.add(i);
+				if (alternation.length() > 0)
+				{
+					alternation.append('|');
+				}
+				alternation.append("(?:").append(rule).append(')');
+				// group numbers shift inside the alternation
+				combinable &= !hasBackReference(rule);
+			}
+		}
+
+		for (Map.Entry<String,List<Integer>> entry : exactLists.entrySet())
+		{
+			exact.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		for (Map.Entry<Integer,List<Integer>> entry : dottedLists.entrySet())
+		{
+			dotted.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		regexIndexes = toArray(regexList);
+		regexes = new Pattern[regexIndexes.length];
+		for (int i = 0; i < regexIndexes.length; i++)
+		{
+			regexes[i] = Pattern.compile(patterns[regexIndexes[i]]);
+		}
+		combined = combinable && regexes.length > 1 ? Pattern.compile(alternation.toString()) : null;
+	}
+
+	/**
+	 * @param name the name to test
+	 * @return true if any rule matches the name
+	 */
+	public boolean matches(String name)
+	{
+		if (exact.containsKey(name))
+		{
+			return true;
+		}
+		int[] candidates = dotted.get(name.length());
+		if (candidates != null)
+		{
+			for (int index : candidates)
+			{
+				if (matchesDotted(patterns[index], name))
+				{
+					return true;
+				}
+			}
+		}
+		if (combined != null)
+		{
+			return combined.matcher(name).matches();
+		}
+		for (Pattern regex : regexes)
+		{
+			if (regex.matcher(name).matches())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param name the name to test
+	 * @return the number of rules matching the name
+	 */
+	public int count(String name)
+	{
+		return matching(name, 0).length;
+	}
+
+	/**
+	 * @param name the name to test
+	 * @return the values of all rules matching the name, in rule order
+	 */
+	public List<String> values(String name)
+	{
+		int[] indexes = matching(name, 0);
+		List<String> result = new ArrayList<String>(indexes.length);
+		for (int index : indexes)
+		{
+			result.add(values[index]);
+		}
+		return result;
+	}
+
+	/**
+	 * Apply the rules in order. Each matching rule replaces the name with its value,
+	 * and the following rules are tested against the replaced name.
+	 *
+	 * @param name the name to rewrite
+	 * @return the rewritten name, or the name itself if no rule matched
+	 */
+	public String rewrite(String name)
+	{
+		int from = 0;
+		while (from < patterns.length)
+		{
+			int[] indexes = matching(name, from);
+			if (indexes.length == 0)
+			{
+				break;
+			}
+			name = values[indexes[0]];
+			from = indexes[0] + 1;
+		}
+		return name;
+	}
+
+	/**
+	 * @return the number of rules
+	 */
+	public int size()
+	{
+		return patterns.length;
+	}
+
+	/**
+	 * Find the rules matching a name.
+	 *
+	 * @param name the name
+	 * @param from the first rule index to consider
+	 * @return the indexes of the matching rules, in order
+	 */
+	private int[] matching(String name, int from)
+	{
+		int[] plain = exact.get(name);
+		int[] candidates = dotted.get(name.length());
+		boolean anyRegex = regexes.length > 0 && (combined == null || combined.matcher(name).matches());
+		if (plain == null && candidates == null && !anyRegex)
+		{
+			return NONE;
+		}
+
+		int[] found = new int[(plain == null ? 0 : plain.length) + (candidates == null ? 0 : candidates.length)
+				+ (anyRegex ? regexes.length : 0)];
+		int count = 0;
+		if (plain != null)
+		{
+			for (int index : plain)
+			{
+				if (index >= from)
+				{
+					found[count++] = index;
+				}
+			}
+		}
+		if (candidates != null)
+		{
+			for (int index : candidates)
+			{
+				if (index >= from && matchesDotted(patterns[index], name))
+				{
+					found[count++] = index;
+				}
+			}
+		}
+		if (anyRegex)
+		{
+			for (int i = 0; i < regexes.length; i++)
+			{
+				if (regexIndexes[i] >= from && regexes[i].matcher(name).matches())
+				{
+					found[count++] = regexIndexes[i];
+				}
+			}
+		}
+		if (count == 0)
+		{
+			return NONE;
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(found, 0, result, 0, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	private static final int PLAIN = 0;
+	private static final int DOTTED = 1;
+	private static final int REGEX = 2;
+
+	/**
+	 * @return PLAIN for names without regex syntax, DOTTED if the only regex syntax is
+	 *         '.', REGEX otherwise
+	 */
+	private static int classify(String rule)
+	{
+		int kind = PLAIN;
+		for (int i = 0; i < rule.length(); i++)
+		{
+			char c = rule.charAt(i);
+			if (c == '.')
+			{
+				kind = DOTTED;
+			}
+			else if ("\\^$|?*+()[]{}".indexOf(c) >= 0)
+			{
+				return REGEX;
+			}
+		}
+		return kind;
+	}
+
+	/**
+	 * Match a DOTTED rule of the same length as the name, '.' matching any character
+	 * except line terminators, as in a regex.
+	 */
+	private static boolean matchesDotted(String rule, String name)
+	{
+		for (int i = 0; i < rule.length(); i++)
+		{
+			char r = rule.charAt(i);
+			char c = name.charAt(i);
+			if (r == '.')
+			{
+				if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+				{
+					return false;
+				}
+			}
+			else if (r != c)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasBackReference(String rule)
+	{
+		for (int i = 0; i < rule.length() - 1; i++)
+		{
+			if (rule.charAt(i) == '\\')
+			{
+				char next = rule.charAt(i + 1);
+				if (Character.isDigit(next) || next == 'k')
+				{
+					return true;
+				}
+				// skip the escaped character
+				i++;
+			}
+		}
+		return false;
+	}
+
+	private static <K> void add(Map<K,List<Integer>> lists, K key, int index)
+	{
+		List<Integer> list = lists.get(key);
+		if (list == null)
+		{
+			list = new ArrayList<Integer>();
+			lists.put(key, list);
+		}
+		list.add(index);
+	}
+
+	private static int[] toArray(List<Integer> list)
+	{
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+}
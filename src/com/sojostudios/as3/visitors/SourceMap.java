@@ -0,0 +1,345 @@
+package com.sojostudios.as3.visitors;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Maps the lines of a generated AS3 file back to the Java source they came from.
+ * AS3DumpVisitor marks the line each statement and member starts on with the line
+ * and column of its Node. A line with no mark of its own, like a closing brace,
+ * belongs to the last marked line above it.
+ *
+ * The map is written as a version 3 source map, the JSON format browsers and most
+ * tools read, with one segment per AS3 line. Marking a line is an array store, so
+ * building a map adds very little to the dump.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class SourceMap
+{
+	private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+	private static final char[] BASE64_DIGITS = BASE64.toCharArray();
+
+	private final String file;
+	private final String source;
+
+	// by AS3 line from 0, the Java line and column from 1, 0 if not marked
+	private int[] javaLines = new int[256];
+	private int[] javaColumns = new int[256];
+	private int lineCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file the name of the AS3 file
+	 * @param source the path of the Java source
+	 */
+	public SourceMap(String file, String source)
+	{
+		this.file = file;
+		this.source = source;
+	}
+
+	/**
+	 * Mark an AS3 line with the Java position of the node printed on it. The first
+	 * mark of a line is kept, which is the outermost node starting there.
+	 *
+	 * @param as3Line the AS3 line, from 0
+	 * @param javaLine the Java line, from 1. Nodes made up by the mutation visitor
+	 *        have none and are ignored.
+	 * @param javaColumn the Java column, from 1
+	 */
+	public void mark(int as3Line, int javaLine, int javaColumn)
+	{
+		if (javaLine <= 0)
+		{
+			return;
+		}
+		if (as3Line >= javaLines.length)
+		{
+			int size = Math.max(javaLines.length * 2, as3Line + 1);
+			int[] lines = new int[size];
+			System.arraycopy(javaLines, 0, lines, 0, javaLines.length);
+			javaLines = lines;
+			int[] columns = new int[size];
+			System.arraycopy(javaColumns, 0, columns, 0, javaColumns.length);
+			javaColumns = columns;
+		}
+		if (javaLines[as3Line] == 0)
+		{
+			javaLines[as3Line] = javaLine;
+			javaColumns[as3Line] = javaColumn;
+		}
+		if (as3Line >= lineCount)
+		{
+			lineCount = as3Line + 1;
+		}
+	}
+
+	/**
+	 * Set the number of lines of the AS3 file, once it is dumped. Lines after the
+	 * last mark belong to it.
+	 *
+	 * @param lineCount the number of AS3 lines
+	 */
+	public void setLineCount(int lineCount)
+	{
+		this.lineCount = lineCount;
+	}
+
+	/**
+	 * @return the number of AS3 lines
+	 */
+	public int getLineCount()
+	{
+		return lineCount;
+	}
+
+	/**
+	 * @param as3Line an AS3 line, from 1 as profilers count
+	 * @return the Java line it came from, from 1, or 0 if it is above the first mark
+	 */
+	public int getJavaLine(int as3Line)
+	{
+		int marked = markedLine(as3Line - 1);
+		return marked < 0 ? 0 : javaLines[marked];
+	}
+
+	/**
+	 * @param as3Line an AS3 line, from 1 as profilers count
+	 * @return the Java column it came from, from 1, or 0 if it is above the first mark
+	 */
+	public int getJavaColumn(int as3Line)
+	{
+		int marked = markedLine(as3Line - 1);
+		return marked < 0 ? 0 : javaColumns[marked];
+	}
+
+	/**
+	 * Find the last marked line at or above a line.
+	 */
+	private int markedLine(int line)
+	{
+		for (int i = Math.min(line, javaLines.length - 1); i >= 0; i--)
+		{
+			if (javaLines[i] != 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the name of the AS3 file
+	 */
+	public String getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return the path of the Java source
+	 */
+	public String getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * Write the map as a version 3 source map.
+	 *
+	 * @param out the Writer, it is not closed
+	 * @throws IOException
+	 */
+	public void write(Writer out) throws IOException
+	{
+		StringBuilder sb = new StringBuilder(64 + lineCount * 6);
+		sb.append("{\"version\":3,\"file\":");
+		appendString(sb, file);
+		sb.append(",\"sources\":[");
+		appendString(sb, source);
+		sb.append("],\"names\":[],\"mappings\":\"");
+		// the Java line and column are relative to the previous segment
+		int lastLine = 0;
+		int lastColumn = 0;
+		int javaLine = 0;
+		int javaColumn = 0;
+		for (int i = 0; i < lineCount; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(';');
+			}
+			if (i < javaLines.length && javaLines[i] != 0)
+			{
+				javaLine = javaLines[i];
+				javaColumn = javaColumns[i];
+			}
+			if (javaLine == 0)
+			{
+				continue;
+			}
+			if (javaLine - 1 == lastLine && javaColumn - 1 == lastColumn)
+			{
+				// most lines, filled forward from the one above
+				sb.append("AAAA");
+				continue;
+			}
+			// AS3 column and source index, always 0
+			sb.append("AA");
+			appendVlq(sb, javaLine - 1 - lastLine);
+			appendVlq(sb, javaColumn - 1 - lastColumn);
+			lastLine = javaLine - 1;
+			lastColumn = javaColumn - 1;
+		}
+		sb.append("\"}\n");
+		out.write(sb.toString());
+	}
+
+	/**
+	 * Read a map written by {@link #write(Writer)}.
+	 *
+	 * @param in the Reader
+	 * @return the map
+	 * @throws IOException if the map can't be read or is not a version 3 source map
+	 */
+	public static SourceMap read(Reader in) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		char[] chars = new char[4096];
+		for (int read = in.read(chars); read >= 0; read = in.read(chars))
+		{
+			sb.append(chars, 0, read);
+		}
+		String json = sb.toString();
+		if (!json.contains("\"version\":3"))
+		{
+			throw new IOException("Not a version 3 source map");
+		}
+		SourceMap map = new SourceMap(readString(json, "\"file\":"), readString(json, "\"sources\":["));
+		String mappings = readString(json, "\"mappings\":");
+
+		int line = 0;
+		int javaLine = 0;
+		int javaColumn = 0;
+		int[] fields = new int[4];
+		int[] pos = new int[1];
+		int i = 0;
+		while (i <= mappings.length())
+		{
+			if (i == mappings.length() || mappings.charAt(i) == ';')
+			{
+				line++;
+				i++;
+				continue;
+			}
+			// one segment, only the first of a line is used
+			pos[0] = i;
+			int count = 0;
+			while (pos[0] < mappings.length() && mappings.charAt(pos[0]) != ',' && mappings.charAt(pos[0]) != ';')
+			{
+				int value = readVlq(mappings, pos);
+				if (count < fields.length)
+				{
+					fields[count] = value;
+				}
+				count++;
+			}
+			if (count >= 4)
+			{
+				javaLine += fields[2];
+				javaColumn += fields[3];
+				map.mark(line, javaLine + 1, javaColumn + 1);
+			}
+			i = pos[0];
+			while (i < mappings.length() && mappings.charAt(i) != ';')
+			{
+				i++;
+			}
+		}
+		map.setLineCount(Math.max(map.getLineCount(), line));
+		return map;
+	}
+
+	private static void appendVlq(StringBuilder sb, int value)
+	{
+		int vlq = value < 0 ? (-value << 1) | 1 : value << 1;
+		do
+		{
+			int digit = vlq & 31;
+			vlq >>>= 5;
+			if (vlq != 0)
+			{
+				digit |= 32;
+			}
+			sb.append(BASE64_DIGITS[digit]);
+		}
+		while (vlq != 0);
+	}
+
+	private static int readVlq(String s, int[] pos) throws IOException
+	{
+		int vlq = 0;
+		int shift = 0;
+		int digit;
+		do
+		{
+			if (pos[0] >= s.length())
+			{
+				throw new IOException("Truncated source map mappings");
+			}
+			digit = BASE64.indexOf(s.charAt(pos[0]++));
+			if (digit < 0)
+			{
+				throw new IOException("Invalid character in source map mappings");
+			}
+			vlq |= (digit & 31) << shift;
+			shift += 5;
+		}
+		while ((digit & 32) != 0);
+		return (vlq & 1) != 0 ? -(vlq >>> 1) : vlq >>> 1;
+	}
+
+	private static void appendString(StringBuilder sb, String value)
+	{
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+		sb.append('"');
+	}
+
+	private static String readString(String json, String key) throws IOException
+	{
+		int start = json.indexOf(key);
+		if (start < 0)
+		{
+			throw new IOException("Missing " + key + " in source map");
+		}
+		start = json.indexOf('"', start + key.length());
+		StringBuilder sb = new StringBuilder();
+		for (int i = start + 1; i < json.length(); i++)
+		{
+			char c = json.charAt(i);
+			if (c == '"')
+			{
+				return sb.toString();
+			}
+			if (c == '\\' && i + 1 < json.length())
+			{
+				c = json.charAt(++i);
+			}
+			sb.append(c);
+		}
+		throw new IOException("Unterminated string in source map");
+	}
+}
@@ -0,0 +1,178 @@
+package com.sojostudios.as3.visitors;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers how type names are classified by the rules of a MutationConfig. A batch
+ * sees the same few names (List, String, HashMap, its own classes) over and over,
+ * so each name is matched against the rules once and looked up after that.
+ *
+ * The cache belongs to its MutationConfig, so it is dropped with the config when
+ * the rules change: a visitor drops its config when an option is set, when a
+ * collection getter hands out a rule collection and at the start of each
+ * compilation unit it visits with its own collections. It is safe to use from many threads. When it holds capacity
+ * names it is cleared, which keeps it bounded without tracking usage.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class TypeClassifier
+{
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final MutationConfig config;
+	private final int capacity;
+	private final ConcurrentMap<String,Classification> cache;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config the rules to classify with
+	 * @param capacity the most names kept
+	 */
+	public TypeClassifier(MutationConfig config, int capacity)
+	{
+		this.config = config;
+		this.capacity = capacity;
+		this.cache = new ConcurrentHashMap<String,Classification>(Math.min(capacity, 256));
+	}
+
+	/**
+	 * @param name a type name as written in the source
+	 * @return how the rules treat the name
+	 */
+	public Classification classify(String name)
+	{
+		Classification result = cache.get(name);
+		if (result != null)
+		{
+			hits.incrementAndGet();
+			return result;
+		}
+		misses.incrementAndGet();
+		result = new Classification(config, name);
+		if (cache.size() >= capacity)
+		{
+			cache.clear();
+		}
+		cache.put(name, result);
+		return result;
+	}
+
+	/**
+	 * Forget all names. The counters are kept.
+	 */
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	/**
+	 * @return the number of names found in the cache
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of names that had to be matched against the rules
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of names in the cache
+	 */
+	public int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * @return the capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public String toString()
+	{
+		return size() + " type names, " + getHits() + " hits, " + getMisses() + " misses";
+	}
+
+	/**
+	 * The result of the rules for one type name.
+	 */
+	public static class Classification
+	{
+		/**
+		 * The name a type reference ends up with, after classesToClasses and the
+		 * Array, Dictionary and Vector conversions.
+		 */
+		public final String resolvedName;
+
+		/**
+		 * Number of classesToArrays rules matching the name.
+		 */
+		public final int arrays;
+		/**
+		 * Number of classesToDictionaries rules matching the name.
+		 */
+		public final int dictionaries;
+		/**
+		 * Number of classesToVectors rules matching the name.
+		 */
+		public final int vectors;
+
+		/**
+		 * Number of classesExtendArray rules matching the name.
+		 */
+		public final int extendArrays;
+		/**
+		 * Number of classesExtendDictionary rules matching the name.
+		 */
+		public final int extendDictionaries;
+		/**
+		 * Number of classesExtendVector rules matching the name.
+		 */
+		public final int extendVectors;
+
+		private Classification(MutationConfig config, String name)
+		{
+			MutationRules rules = config.getRules();
+
+			// type references are converted step by step, each step sees the name the last one left
+			String resolved = rules.classRules.rewrite(name);
+			if (rules.arrayRules.matches(resolved))
+			{
+				resolved = config.getArrayClass();
+			}
+			if (rules.dictionaryRules.matches(resolved))
+			{
+				resolved = config.getDictionaryClass();
+			}
+			if (rules.vectorRules.matches(resolved))
+			{
+				resolved = config.getVectorClass();
+			}
+			resolvedName = resolved;
+
+			arrays = rules.arrayRules.count(name);
+			dictionaries = rules.dictionaryRules.count(name);
+			vectors = rules.vectorRules.count(name);
+			extendArrays = rules.extendArrayRules.count(name);
+			extendDictionaries = rules.extendDictionaryRules.count(name);
+			extendVectors = rules.extendVectorRules.count(name);
+		}
+	}
+}
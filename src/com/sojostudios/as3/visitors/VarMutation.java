@@ -2,13 +2,14 @@ package com.sojostudios.as3.visitors;
 
 import japa.parser.ast.type.ClassOrInterfaceType;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Simple placeholder class for a variable mutation. Stores flags for
  * mutation references.
  * 
+ * @see MutationFlags
+ * 
  * @author Kurtis Kopf
  *
  */
@@ -16,10 +17,31 @@ public class VarMutation
 {
 	public String name = null;
 	public ClassOrInterfaceType type = null;
-	public List<String> mutationFlags = new ArrayList<String>();
+	public int mutationFlags = 0;
+	
+	// scope bookkeeping for MutationVariableScope
+	int depth = 0;
+	VarMutation shadowed = null;
+	
+	/**
+	 * @param flags one or more MutationFlags bits
+	 * @return true if any of the flags is set
+	 */
+	public boolean hasFlag(int flags)
+	{
+		return (mutationFlags & flags) != 0;
+	}
 	
 	public boolean hasFlag(String flag)
 	{
-		return mutationFlags.contains(flag);
+		return hasFlag(MutationFlags.bit(flag));
+	}
+	
+	/**
+	 * @return the names of the flags that are set
+	 */
+	public List<String> getFlagNames()
+	{
+		return MutationFlags.names(mutationFlags);
 	}
 }
@@ -0,0 +1,134 @@
+package com.sojostudios.as3;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that compileArchive keeps the AS3 output of every archive entry inside
+ * the output directory, whatever the entry names are.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class ArchiveTest
+{
+	private static final String SOURCE = "package evil; public class Evil { }";
+
+	private final JavaToAS3Compiler compiler = new JavaToAS3Compiler();
+	private File root;
+	private File output;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		root = File.createTempFile("archive", "test");
+		root.delete();
+		output = new File(root, "out/as3");
+		output.mkdirs();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(root);
+	}
+
+	@Test
+	public void testEntryPaths() throws Exception
+	{
+		File archive = writeArchive("com/example/Good.java");
+		compiler.compileArchive(archive, output);
+		assertTrue(new File(output, "com/example/Good.as").isFile());
+	}
+
+	@Test
+	public void testParentEntry() throws Exception
+	{
+		assertRejected("../../escaped/Evil.java");
+		assertFalse(new File(root, "escaped").exists());
+	}
+
+	@Test
+	public void testNestedParentEntry() throws Exception
+	{
+		assertRejected("com/../../Evil.java");
+		assertFalse(new File(root, "out/Evil.as").exists());
+	}
+
+	@Test
+	public void testAbsoluteEntry() throws Exception
+	{
+		assertRejected(new File(root, "Evil.java").getAbsolutePath().replace(File.separatorChar, '/'));
+		assertFalse(new File(root, "Evil.as").exists());
+	}
+
+	@Test
+	public void testParentEntryToArchive() throws Exception
+	{
+		File archive = writeArchive("../Evil.java");
+		try
+		{
+			compiler.compileArchive(archive, new File(root, "out.zip"));
+			fail("../Evil.java was accepted");
+		}
+		catch (IOException e)
+		{
+			assertFalse(new File(root, "out.zip").exists());
+		}
+	}
+
+	private void assertRejected(String name) throws Exception
+	{
+		File archive = writeArchive(name);
+		try
+		{
+			compiler.compileArchive(archive, output);
+			fail(name + " was accepted");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	private File writeArchive(String name) throws IOException
+	{
+		File archive = new File(root, "sources.jar");
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+		try
+		{
+			zip.putNextEntry(new ZipEntry(name));
+			zip.write(SOURCE.getBytes("UTF-8"));
+			zip.closeEntry();
+		}
+		finally
+		{
+			zip.close();
+		}
+		return archive;
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,49 @@
+package com.sojostudios.as3;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sojostudios.as3.visitors.MutationConfig;
+
+/**
+ * Checks that the frozen mutation options of a JavaToAS3Compiler are reused while
+ * the options stay the same, and built again after a setter or getter.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class CompilerOptionsTest
+{
+	private static final String SOURCE = "package test; public class Holder { private Foo foo = new Foo(); }";
+
+	private final JavaToAS3Compiler compiler = new JavaToAS3Compiler();
+
+	@Test
+	public void testConfigReused() throws Exception
+	{
+		MutationConfig config = compiler.mutationConfig();
+		compiler.compileString(SOURCE);
+		assertSame(config, compiler.mutationConfig());
+	}
+
+	@Test
+	public void testGetterAfterCompile() throws Exception
+	{
+		assertTrue(compiler.compileString(SOURCE).contains("foo:Foo"));
+		MutationConfig config = compiler.mutationConfig();
+		compiler.getClassesToClasses().put("Foo", "Bar");
+		assertTrue(compiler.compileString(SOURCE).contains("foo:Bar"));
+		assertNotSame(config, compiler.mutationConfig());
+	}
+
+	@Test
+	public void testSetterAfterCompile() throws Exception
+	{
+		assertTrue(compiler.compileString(SOURCE).contains("foo:Foo"));
+		compiler.setForceSprite(true);
+		assertTrue(compiler.compileString(SOURCE).contains("extends Sprite"));
+	}
+}
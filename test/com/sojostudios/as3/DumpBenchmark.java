@@ -0,0 +1,164 @@
+package com.sojostudios.as3;
+
+import japa.parser.JavaParser;
+import japa.parser.ast.CompilationUnit;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.sojostudios.as3.visitors.AS3DumpVisitor;
+import com.sojostudios.as3.visitors.AS3MutationVisitor;
+import com.sojostudios.as3.visitors.Diagnostics;
+import com.sojostudios.as3.visitors.SourceMap;
+
+/**
+ * Times AS3DumpVisitor on a generated class of about 20000 lines, dumping to a
+ * String, to a Writer and to a Writer while building a source map. The class is parsed and mutated once, only the dump is
+ * timed. Run with "ant bench", or directly with an optional number of rounds.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class DumpBenchmark
+{
+	private static final int METHODS = 1000;
+
+	public static void main(String[] args) throws Exception
+	{
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+
+		String source = generate(METHODS);
+		CompilationUnit cu = JavaParser.parse(new ByteArrayInputStream(source.getBytes("UTF-8")), "UTF-8");
+		AS3MutationVisitor mutator = new AS3MutationVisitor();
+		mutator.includeDefaults();
+		mutator.setDiagnostics(Diagnostics.DISABLED);
+		mutator.visit(cu, null);
+
+		int lines = source.split("\n").length;
+		System.out.println("Dumping a class of " + lines + " lines, " + source.length() + " chars, " + rounds + " rounds");
+
+		// warm up
+		for (int i = 0; i < rounds; i++)
+		{
+			dumpToString(cu, source.length());
+			dumpToWriter(cu, false);
+			dumpToWriter(cu, true);
+		}
+
+		long stringBest = Long.MAX_VALUE;
+		long stringTotal = 0;
+		long writerBest = Long.MAX_VALUE;
+		long writerTotal = 0;
+		long mapBest = Long.MAX_VALUE;
+		long mapTotal = 0;
+		int length = 0;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			length = dumpToString(cu, source.length());
+			long time = System.nanoTime() - start;
+			stringBest = Math.min(stringBest, time);
+			stringTotal += time;
+
+			start = System.nanoTime();
+			dumpToWriter(cu, false);
+			time = System.nanoTime() - start;
+			writerBest = Math.min(writerBest, time);
+			writerTotal += time;
+
+			start = System.nanoTime();
+			dumpToWriter(cu, true);
+			time = System.nanoTime() - start;
+			mapBest = Math.min(mapBest, time);
+			mapTotal += time;
+		}
+		System.out.println("to String: best " + millis(stringBest) + " ms, mean " + millis(stringTotal / rounds) + " ms, " + length + " chars");
+		System.out.println("to Writer: best " + millis(writerBest) + " ms, mean " + millis(writerTotal / rounds) + " ms");
+		System.out.println("with map:  best " + millis(mapBest) + " ms, mean " + millis(mapTotal / rounds) + " ms");
+	}
+
+	private static int dumpToString(CompilationUnit cu, int sourceLength)
+	{
+		AS3DumpVisitor as3 = new AS3DumpVisitor();
+		as3.setDiagnostics(Diagnostics.DISABLED);
+		as3.ensureCapacity(sourceLength);
+		as3.visit(cu, null);
+		return as3.toString().length();
+	}
+
+	private static void dumpToWriter(CompilationUnit cu, boolean sourceMap) throws IOException
+	{
+		NullWriter out = new NullWriter();
+		AS3DumpVisitor as3 = new AS3DumpVisitor(out);
+		as3.setDiagnostics(Diagnostics.DISABLED);
+		if (sourceMap)
+		{
+			as3.setSourceMap(new SourceMap("Generated.as", "bench/Generated.java"));
+		}
+		as3.visit(cu, null);
+		as3.flush();
+		if (sourceMap)
+		{
+			as3.getSourceMap().write(out);
+		}
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.valueOf(nanos / 10000 / 100.0);
+	}
+
+	/**
+	 * A class with nested blocks, loops, collections and string calls, about 20
+	 * lines per method.
+	 */
+	private static String generate(int methods)
+	{
+		StringBuilder sb = new StringBuilder(methods * 800);
+		sb.append("package bench;\n\n");
+		sb.append("import java.util.ArrayList;\nimport java.util.HashMap;\nimport java.util.List;\nimport java.util.Map;\n\n");
+		sb.append("public class Generated\n{\n");
+		sb.append("\tprivate List<String> names = new ArrayList<String>();\n");
+		sb.append("\tprivate Map<String,Integer> counts = new HashMap<String,Integer>();\n\n");
+		for (int m = 0; m < methods; m++)
+		{
+			sb.append("\t/**\n\t * Method ").append(m).append(".\n\t */\n");
+			sb.append("\tpublic int method").append(m).append("(List<Integer> values, String key)\n\t{\n");
+			sb.append("\t\tint total = ").append(m).append(";\n");
+			sb.append("\t\tdouble scale = 1.5;\n");
+			sb.append("\t\tfor (int i = 0; i < values.size(); i++)\n\t\t{\n");
+			sb.append("\t\t\tif (values.get(i) > total)\n\t\t\t{\n");
+			sb.append("\t\t\t\ttotal += values.get(i) * 2;\n");
+			sb.append("\t\t\t}\n\t\t\telse\n\t\t\t{\n");
+			sb.append("\t\t\t\ttotal -= (int)(scale * i);\n");
+			sb.append("\t\t\t}\n\t\t}\n");
+			sb.append("\t\tif (key.equals(\"m").append(m).append("\") && key.length() > 2)\n\t\t{\n");
+			sb.append("\t\t\tnames.add(key);\n");
+			sb.append("\t\t\tcounts.put(key, total);\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\treturn total + names.size();\n");
+			sb.append("\t}\n\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static class NullWriter extends Writer
+	{
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
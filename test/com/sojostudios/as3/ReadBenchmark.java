@@ -0,0 +1,158 @@
+package com.sojostudios.as3;
+
+import japa.parser.JavaParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times reading and parsing the Java sources below a directory, streaming each
+ * file through a FileInputStream as compileFile used to, against reading it in
+ * one bulk read with SourceReader. The reads are also timed without parsing.
+ * Run with "ant bench", or directly with a source directory and an optional
+ * number of rounds.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class ReadBenchmark
+{
+	private static final String ENCODING = "UTF-8";
+
+	public static void main(String[] args) throws Exception
+	{
+		File dir = new File(args.length > 0 ? args[0] : "src");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		List<File> files = new ArrayList<File>();
+		findSources(dir, files);
+		long bytes = 0;
+		for (File file : files)
+		{
+			bytes += file.length();
+		}
+		System.out.println("Reading " + files.size() + " sources, " + bytes / 1024 + " KB, from " + dir + ", " + rounds + " rounds");
+
+		// warm up
+		for (int i = 0; i < rounds; i++)
+		{
+			readStream(files);
+			readBulk(files);
+			parseStream(files);
+			parseBulk(files);
+		}
+
+		long[] readStream = new long[] { Long.MAX_VALUE, 0 };
+		long[] readBulk = new long[] { Long.MAX_VALUE, 0 };
+		long[] parseStream = new long[] { Long.MAX_VALUE, 0 };
+		long[] parseBulk = new long[] { Long.MAX_VALUE, 0 };
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			readStream(files);
+			record(readStream, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			readBulk(files);
+			record(readBulk, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			parseStream(files);
+			record(parseStream, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			parseBulk(files);
+			record(parseBulk, System.nanoTime() - start);
+		}
+		System.out.println("read, stream:  best " + millis(readStream[0]) + " ms, mean " + millis(readStream[1] / rounds) + " ms");
+		System.out.println("read, bulk:    best " + millis(readBulk[0]) + " ms, mean " + millis(readBulk[1] / rounds) + " ms");
+		System.out.println("parse, stream: best " + millis(parseStream[0]) + " ms, mean " + millis(parseStream[1] / rounds) + " ms");
+		System.out.println("parse, bulk:   best " + millis(parseBulk[0]) + " ms, mean " + millis(parseBulk[1] / rounds) + " ms");
+	}
+
+	private static void readStream(List<File> files) throws IOException
+	{
+		byte[] chunk = new byte[8192];
+		for (File file : files)
+		{
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				while (in.read(chunk) >= 0)
+				{
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
+	private static void readBulk(List<File> files) throws IOException
+	{
+		for (File file : files)
+		{
+			SourceReader.read(file);
+		}
+	}
+
+	private static void parseStream(List<File> files) throws Exception
+	{
+		for (File file : files)
+		{
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				JavaParser.parse(in, ENCODING);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
+	private static void parseBulk(List<File> files) throws Exception
+	{
+		for (File file : files)
+		{
+			JavaParser.parse(SourceReader.stream(SourceReader.read(file)), ENCODING);
+		}
+	}
+
+	private static void record(long[] times, long time)
+	{
+		times[0] = Math.min(times[0], time);
+		times[1] += time;
+	}
+
+	private static void findSources(File dir, List<File> files)
+	{
+		File[] children = dir.listFiles();
+		if (children == null)
+		{
+			return;
+		}
+		for (File child : children)
+		{
+			if (child.isDirectory())
+			{
+				findSources(child, files);
+			}
+			else if (child.getName().endsWith(".java"))
+			{
+				files.add(child);
+			}
+		}
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.valueOf(nanos / 10000 / 100.0);
+	}
+}
@@ -0,0 +1,242 @@
+package com.sojostudios.as3;
+
+import japa.parser.JavaParser;
+import japa.parser.ast.CompilationUnit;
+import japa.parser.ast.ImportDeclaration;
+import japa.parser.ast.type.ClassOrInterfaceType;
+import japa.parser.ast.visitor.VoidVisitorAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.sojostudios.as3.visitors.AS3MutationVisitor;
+import com.sojostudios.as3.visitors.Diagnostics;
+import com.sojostudios.as3.visitors.MutationRules;
+import com.sojostudios.as3.visitors.RuleSet;
+
+/**
+ * Times matching the default mutation rules against the type and import names of
+ * the Java sources below a directory, with a String.matches loop over every rule
+ * as the mutation visitor used to, against RuleSets. As with a fresh visitor per
+ * file, the RuleSets are compiled again for every file. Mutating every file with a
+ * fresh visitor that includes the defaults is timed as well. Files are parsed
+ * before the timed part of each round. Run with "ant bench", or directly with a
+ * source directory and an optional number of rounds.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class RuleBenchmark
+{
+	private static final String ENCODING = "UTF-8";
+
+	public static void main(String[] args) throws Exception
+	{
+		File dir = new File(args.length > 0 ? args[0] : "src");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		List<File> files = new ArrayList<File>();
+		findSources(dir, files);
+		List<List<String>> names = new ArrayList<List<String>>();
+		int nameCount = 0;
+		for (CompilationUnit cu : parse(files))
+		{
+			List<String> fileNames = collectNames(cu);
+			names.add(fileNames);
+			nameCount += fileNames.size();
+		}
+		MutationRules rules = AS3MutationVisitor.getDefaultRules();
+		System.out.println("Matching " + nameCount + " names in " + files.size() + " sources from " + dir + ", " + rounds + " rounds");
+
+		// warm up, and check both ways agree
+		for (int i = 0; i < rounds; i++)
+		{
+			int regex = matchRegex(names, rules);
+			int ruleSets = matchRuleSets(names, rules);
+			if (regex != ruleSets)
+			{
+				throw new IllegalStateException("String.matches found " + regex + " matches, RuleSet " + ruleSets);
+			}
+			mutate(parse(files));
+		}
+
+		long[] regex = new long[] { Long.MAX_VALUE, 0 };
+		long[] ruleSets = new long[] { Long.MAX_VALUE, 0 };
+		long[] mutate = new long[] { Long.MAX_VALUE, 0 };
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			matchRegex(names, rules);
+			record(regex, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			matchRuleSets(names, rules);
+			record(ruleSets, System.nanoTime() - start);
+
+			List<CompilationUnit> units = parse(files);
+			start = System.nanoTime();
+			mutate(units);
+			record(mutate, System.nanoTime() - start);
+		}
+		System.out.println("String.matches: best " + millis(regex[0]) + " ms, mean " + millis(regex[1] / rounds) + " ms");
+		System.out.println("RuleSet:        best " + millis(ruleSets[0]) + " ms, mean " + millis(ruleSets[1] / rounds) + " ms");
+		System.out.println("mutate:         best " + millis(mutate[0]) + " ms, mean " + millis(mutate[1] / rounds) + " ms");
+	}
+
+	/**
+	 * Test every name against every rule, as the visitor did before RuleSet.
+	 */
+	private static int matchRegex(List<List<String>> names, MutationRules rules)
+	{
+		int found = 0;
+		for (List<String> fileNames : names)
+		{
+			for (String name : fileNames)
+			{
+				found += count(rules.getClassesToArrays(), name);
+				found += count(rules.getClassesToDictionaries(), name);
+				found += count(rules.getClassesToVectors(), name);
+				found += count(rules.getClassesExtendArray(), name);
+				found += count(rules.getClassesExtendDictionary(), name);
+				found += count(rules.getClassesExtendVector(), name);
+				found += count(rules.getImportsToIgnore(), name);
+				String rewritten = name;
+				for (Map.Entry<String,String> entry : rules.getClassesToClasses().entrySet())
+				{
+					if (rewritten.matches(entry.getKey()))
+					{
+						rewritten = entry.getValue();
+					}
+				}
+				found += rewritten.length();
+			}
+		}
+		return found;
+	}
+
+	private static int count(List<String> rules, String name)
+	{
+		int found = 0;
+		for (String rule : rules)
+		{
+			if (name.matches(rule))
+			{
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Compile the rules for each file, then test the names of the file.
+	 */
+	private static int matchRuleSets(List<List<String>> names, MutationRules rules)
+	{
+		int found = 0;
+		for (List<String> fileNames : names)
+		{
+			RuleSet toArrays = new RuleSet(rules.getClassesToArrays());
+			RuleSet toDictionaries = new RuleSet(rules.getClassesToDictionaries());
+			RuleSet toVectors = new RuleSet(rules.getClassesToVectors());
+			RuleSet extendArray = new RuleSet(rules.getClassesExtendArray());
+			RuleSet extendDictionary = new RuleSet(rules.getClassesExtendDictionary());
+			RuleSet extendVector = new RuleSet(rules.getClassesExtendVector());
+			RuleSet importsToIgnore = new RuleSet(rules.getImportsToIgnore());
+			RuleSet classesToClasses = new RuleSet(rules.getClassesToClasses());
+			for (String name : fileNames)
+			{
+				found += toArrays.count(name);
+				found += toDictionaries.count(name);
+				found += toVectors.count(name);
+				found += extendArray.count(name);
+				found += extendDictionary.count(name);
+				found += extendVector.count(name);
+				found += importsToIgnore.count(name);
+				found += classesToClasses.rewrite(name).length();
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Mutate each unit with a fresh visitor that includes the defaults.
+	 */
+	private static void mutate(List<CompilationUnit> units)
+	{
+		for (CompilationUnit cu : units)
+		{
+			AS3MutationVisitor mutator = new AS3MutationVisitor();
+			mutator.includeDefaults();
+			mutator.setDiagnostics(Diagnostics.DISABLED);
+			mutator.visit(cu, null);
+		}
+	}
+
+	private static List<CompilationUnit> parse(List<File> files) throws Exception
+	{
+		List<CompilationUnit> units = new ArrayList<CompilationUnit>(files.size());
+		for (File file : files)
+		{
+			units.add(JavaParser.parse(SourceReader.stream(SourceReader.read(file)), ENCODING));
+		}
+		return units;
+	}
+
+	/**
+	 * The names the rules are matched against: every class or interface type and
+	 * every import.
+	 */
+	private static List<String> collectNames(CompilationUnit cu)
+	{
+		final List<String> names = new ArrayList<String>();
+		new VoidVisitorAdapter<Object>()
+		{
+			@Override
+			public void visit(ClassOrInterfaceType n, Object arg)
+			{
+				names.add(n.getName());
+				super.visit(n, arg);
+			}
+
+			@Override
+			public void visit(ImportDeclaration n, Object arg)
+			{
+				names.add(n.getName().toString());
+			}
+		}.visit(cu, null);
+		return names;
+	}
+
+	private static void record(long[] times, long time)
+	{
+		times[0] = Math.min(times[0], time);
+		times[1] += time;
+	}
+
+	private static void findSources(File dir, List<File> files)
+	{
+		File[] children = dir.listFiles();
+		if (children == null)
+		{
+			return;
+		}
+		for (File child : children)
+		{
+			if (child.isDirectory())
+			{
+				findSources(child, files);
+			}
+			else if (child.getName().endsWith(".java"))
+			{
+				files.add(child);
+			}
+		}
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.valueOf(nanos / 10000 / 100.0);
+	}
+}
@@ -0,0 +1,197 @@
+package com.sojostudios.as3;
+
+import japa.parser.ast.type.ClassOrInterfaceType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sojostudios.as3.visitors.MutationFlags;
+import com.sojostudios.as3.visitors.MutationVariableScope;
+
+/**
+ * Times MutationVariableScope on deeply nested code, against a stack with one
+ * HashMap per scope level, which is how the scopes were kept before. Each
+ * simulated method declares a parameter, nests blocks to the given depth, looks
+ * the parameter up three times per level and declares a local every 15 levels.
+ * Run with "ant bench", or directly with an optional number of rounds.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class ScopeBenchmark
+{
+	private static final int[] DEPTHS = { 10, 100, 400 };
+	private static final int METHODS = 200;
+
+	public static void main(String[] args) throws Exception
+	{
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+		ClassOrInterfaceType type = new ClassOrInterfaceType("List");
+
+		System.out.println("Scope lookups in " + METHODS + " methods per round, " + rounds + " rounds");
+		for (int depth : DEPTHS)
+		{
+			// warm up
+			for (int i = 0; i < rounds; i++)
+			{
+				runScope(depth, type);
+				runStack(depth, type);
+			}
+
+			long scopeBest = Long.MAX_VALUE;
+			long scopeTotal = 0;
+			long stackBest = Long.MAX_VALUE;
+			long stackTotal = 0;
+			int found = 0;
+			for (int i = 0; i < rounds; i++)
+			{
+				long start = System.nanoTime();
+				found += runScope(depth, type);
+				long time = System.nanoTime() - start;
+				scopeBest = Math.min(scopeBest, time);
+				scopeTotal += time;
+
+				start = System.nanoTime();
+				found -= runStack(depth, type);
+				time = System.nanoTime() - start;
+				stackBest = Math.min(stackBest, time);
+				stackTotal += time;
+			}
+			if (found != 0)
+			{
+				throw new IllegalStateException("The scopes found different variables");
+			}
+			System.out.println("depth " + depth + ": one map best " + micros(scopeBest) + " us/method, mean "
+					+ micros(scopeTotal / rounds) + " us/method; map per level best " + micros(stackBest)
+					+ " us/method, mean " + micros(stackTotal / rounds) + " us/method");
+		}
+	}
+
+	private static int runScope(int depth, ClassOrInterfaceType type)
+	{
+		int found = 0;
+		for (int m = 0; m < METHODS; m++)
+		{
+			MutationVariableScope scope = new MutationVariableScope();
+			scope.pushScopeStack();
+			scope.addVar("values", type, MutationFlags.VECTOR);
+			for (int d = 0; d < depth; d++)
+			{
+				scope.pushScopeStack();
+				if (d % 15 == 0)
+				{
+					scope.addVar("local" + (d % 4), type, 0);
+				}
+				for (int i = 0; i < 3; i++)
+				{
+					if (scope.getVar("values") != null)
+					{
+						found++;
+					}
+				}
+				if (scope.getVarCurScopeOnly("values") != null)
+				{
+					found++;
+				}
+			}
+			for (int d = 0; d < depth; d++)
+			{
+				scope.popScopeStack();
+			}
+			scope.popScopeStack();
+		}
+		return found;
+	}
+
+	private static int runStack(int depth, ClassOrInterfaceType type)
+	{
+		int found = 0;
+		for (int m = 0; m < METHODS; m++)
+		{
+			StackScope scope = new StackScope();
+			scope.pushScopeStack();
+			scope.addVar("values", type);
+			for (int d = 0; d < depth; d++)
+			{
+				scope.pushScopeStack();
+				if (d % 15 == 0)
+				{
+					scope.addVar("local" + (d % 4), type);
+				}
+				for (int i = 0; i < 3; i++)
+				{
+					if (scope.getVar("values") != null)
+					{
+						found++;
+					}
+				}
+				if (scope.getVarCurScopeOnly("values") != null)
+				{
+					found++;
+				}
+			}
+			for (int d = 0; d < depth; d++)
+			{
+				scope.popScopeStack();
+			}
+			scope.popScopeStack();
+		}
+		return found;
+	}
+
+	private static String micros(long nanos)
+	{
+		return String.valueOf(nanos / METHODS / 10 / 100.0);
+	}
+
+	/**
+	 * A HashMap per scope level, looked up from the innermost level out.
+	 */
+	private static class StackScope
+	{
+		private final List<Map<String,Object>> scope = new ArrayList<Map<String,Object>>();
+		private int scopeDepth = 0;
+
+		private StackScope()
+		{
+			scope.add(new HashMap<String,Object>());
+		}
+
+		private void pushScopeStack()
+		{
+			scopeDepth++;
+			scope.add(new HashMap<String,Object>());
+		}
+
+		private void popScopeStack()
+		{
+			scope.remove(scopeDepth);
+			scopeDepth--;
+		}
+
+		private Object getVar(String name)
+		{
+			for (int depth = scopeDepth; depth >= 0; depth--)
+			{
+				Object var = scope.get(depth).get(name);
+				if (var != null)
+				{
+					return var;
+				}
+			}
+			return null;
+		}
+
+		private Object getVarCurScopeOnly(String name)
+		{
+			return scope.get(scopeDepth).get(name);
+		}
+
+		private void addVar(String name, Object type)
+		{
+			scope.get(scopeDepth).put(name, type);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.sojostudios.as3;
+
+/**
+ * The literal forms Java allows, with the AS3 each should turn into.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class TestLiterals
+{
+	// int: as is, octal as hex
+	public int decimalInt = 12354;				// 12354
+	public int zeroInt = 0;						// 0
+	public int hexInt = 0xDF;					// 0xDF
+	public int upperHexInt = 0X7FFFFFFF;		// 0X7FFFFFFF
+	public int octalInt = 017;					// 0xf
+	public int octalZeroInt = 00;				// 0
+	public int allBitsOctalInt = 037777777777;	// 0xffffffff
+	public int minInt = -2147483648;			// -2147483648
+
+	// long: without the L suffix
+	public long decimalLong = 10l;				// 10
+	public long hexLong = 0xDFL;				// 0xDF
+	public long hexFLong = 0xFFFFFFFFFFL;		// 0xFFFFFFFFFF
+	public long octalLong = 0777L;				// 0x1ff
+	public long minLong = -9223372036854775808L;	// -9223372036854775808
+
+	// float and double: without the F or D suffix, hex as decimal
+	public float plainFloat = 1.5f;				// 1.5
+	public float exponentFloat = 1.5E-3F;		// 1.5E-3
+	public float intFloat = 3f;					// 3
+	public double plainDouble = 2.25;			// 2.25
+	public double suffixDouble = 2d;			// 2
+	public double upperSuffixDouble = 1D;		// 1
+	public double exponentDouble = 1e10;		// 1e10
+	public double leadingDotDouble = .5;		// .5
+	public double trailingDotDouble = 5.;		// 5.
+	public double hexDouble = 0x1.8p1;			// 3.0
+	public double hexSuffixDouble = 0x1p-2d;	// 0.25
+
+	// char: as a String
+	public char letter = 'A';					// "A"
+	public char quote = '"';					// "\""
+	public char apostrophe = '\'';				// "\'"
+	public char newline = '\n';					// "\n"
+	public char backslash = '\\';				// "\\"
+	public char nul = '\0';						// "\x00"
+	public char octalChar = '\177';				// "\x7f"
+	public char unicodeChar = '\u0041';		// "A"
+
+	// String: escapes kept, octal escapes as \x escapes
+	public String empty = "";					// ""
+	public String quoted = "a\"b";				// "a\"b"
+	public String tab = "tab\there";			// "tab\there"
+	public String octal = "oct\0\12\377x";		// "oct\x00\x0a\xffx"
+	public String octalDigits = "\1234";		// "\x534"
+	public String apostrophes = "q'q";			// "q'q"
+	public String unicode = "\u00e9t\u00e9";	// the accented chars themselves
+	public String lineSeparator = "a\u2028b";	// U+2028 escaped, it ends a line in AS3
+}
@@ -0,0 +1,144 @@
+package com.sojostudios.as3.visitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sojostudios.as3.JavaToAS3Compiler;
+
+/**
+ * Checks the AS3 printed for every literal form in TestLiterals, by compiling a
+ * field initialized with the literal and comparing the initializer. Forms the
+ * parser does not read are handed to Literals directly.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class LiteralsTest
+{
+	private final JavaToAS3Compiler compiler = new JavaToAS3Compiler();
+
+	@Test
+	public void testInt() throws Exception
+	{
+		assertLiteral("int", "12354", "12354");
+		assertLiteral("int", "0", "0");
+		assertLiteral("int", "0xDF", "0xDF");
+		assertLiteral("int", "0X7FFFFFFF", "0X7FFFFFFF");
+		assertLiteral("int", "-2147483648", "-2147483648");
+	}
+
+	@Test
+	public void testOctal() throws Exception
+	{
+		assertLiteral("int", "017", "0xf");
+		assertLiteral("int", "00", "0");
+		assertLiteral("int", "037777777777", "0xffffffff");
+		assertLiteral("long", "0777L", "0x1ff");
+	}
+
+	@Test
+	public void testBinary() throws Exception
+	{
+		// javaparser 1.0.8 reads Java 6 and has no binary literals, so the printer
+		// is checked through the text the parser would hand it
+		assertEquals("0x5", printInteger("0b101"));
+		assertEquals("0xff", printInteger("0B1111_1111"));
+		assertEquals("0", printInteger("0b0"));
+		assertEquals("0x1ff", printInteger("0_777"));
+	}
+
+	@Test
+	public void testLong() throws Exception
+	{
+		assertLiteral("long", "10l", "10");
+		assertLiteral("long", "0xDFL", "0xDF");
+		assertLiteral("long", "0xFFFFFFFFFFL", "0xFFFFFFFFFF");
+		assertLiteral("long", "-9223372036854775808L", "-9223372036854775808");
+	}
+
+	@Test
+	public void testFloat() throws Exception
+	{
+		assertLiteral("float", "1.5f", "1.5");
+		assertLiteral("float", "1.5E-3F", "1.5E-3");
+		assertLiteral("float", "3f", "3");
+	}
+
+	@Test
+	public void testDouble() throws Exception
+	{
+		assertLiteral("double", "2.25", "2.25");
+		assertLiteral("double", "2d", "2");
+		assertLiteral("double", "1D", "1");
+		assertLiteral("double", "1e10", "1e10");
+		assertLiteral("double", ".5", ".5");
+		assertLiteral("double", "5.", "5.");
+	}
+
+	@Test
+	public void testHexFloat() throws Exception
+	{
+		assertLiteral("double", "0x1.8p1", "3.0");
+		assertLiteral("double", "0x1p-2d", "0.25");
+	}
+
+	@Test
+	public void testChar() throws Exception
+	{
+		assertLiteral("char", "'A'", "\"A\"");
+		assertLiteral("char", "'\"'", "\"\\\"\"");
+		assertLiteral("char", "'\\''", "\"\\'\"");
+		assertLiteral("char", "'\\n'", "\"\\n\"");
+		assertLiteral("char", "'\\\\'", "\"\\\\\"");
+		assertLiteral("char", "'\\u0041'", "\"A\"");
+	}
+
+	@Test
+	public void testOctalEscape() throws Exception
+	{
+		assertLiteral("char", "'\\0'", "\"\\x00\"");
+		assertLiteral("char", "'\\177'", "\"\\x7f\"");
+		assertLiteral("String", "\"oct\\0\\12\\377x\"", "\"oct\\x00\\x0a\\xffx\"");
+		assertLiteral("String", "\"\\1234\"", "\"\\x534\"");
+	}
+
+	@Test
+	public void testString() throws Exception
+	{
+		assertLiteral("String", "\"\"", "\"\"");
+		assertLiteral("String", "\"a\\\"b\"", "\"a\\\"b\"");
+		assertLiteral("String", "\"tab\\there\"", "\"tab\\there\"");
+		assertLiteral("String", "\"q'q\"", "\"q'q\"");
+		assertLiteral("String", "\"\\u00e9t\\u00e9\"", "\"\u00e9t\u00e9\"");
+	}
+
+	@Test
+	public void testLineSeparators() throws Exception
+	{
+		assertLiteral("String", "\"a\\u2028b\"", "\"a\\u2028b\"");
+		assertLiteral("String", "\"a\\u2029b\"", "\"a\\u2029b\"");
+		assertLiteral("char", "'\\u2028'", "\"\\u2028\"");
+	}
+
+	/**
+	 * Compile a field initialized with a Java literal and compare its initializer.
+	 */
+	private void assertLiteral(String type, String java, String as3) throws Exception
+	{
+		String output = compiler.compileString("package test; public class Literal { public " + type + " value = " + java + "; }");
+		int start = output.indexOf(" value:");
+		assertTrue("No field in " + output, start >= 0);
+		start = output.indexOf(" = ", start) + 3;
+		int end = output.indexOf(";\n", start);
+		assertEquals(java, as3, output.substring(start, end));
+	}
+
+	private static String printInteger(String java)
+	{
+		IndentedPrinter printer = new IndentedPrinter();
+		Literals.printInteger(printer, java);
+		return printer.toString();
+	}
+}
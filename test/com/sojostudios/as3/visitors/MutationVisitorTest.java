@@ -0,0 +1,95 @@
+package com.sojostudios.as3.visitors;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import japa.parser.JavaParser;
+import japa.parser.ast.CompilationUnit;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Checks that changes to the options of an AS3MutationVisitor are seen by the
+ * compilation units it visits after the change, also once it has visited and
+ * its type classification cache holds the names classified under the old rules.
+ *
+ * @author Kurtis Kopf
+ *
+ */
+public class MutationVisitorTest
+{
+	private static final String SOURCE = "package test; public class Holder { private Foo foo = new Foo(); }";
+	private static final String LIST_SOURCE = "package test; import java.util.List; public class Holder { private List<String> list; "
+			+ "public void add(String s) { list.add(s); } }";
+
+	@Test
+	public void testGetterAfterVisit() throws Exception
+	{
+		AS3MutationVisitor visitor = new AS3MutationVisitor();
+		assertTrue(mutate(visitor, SOURCE).contains("foo:Foo"));
+		visitor.getClassesToClasses().put("Foo", "Bar");
+		assertTrue(mutate(visitor, SOURCE).contains("foo:Bar"));
+	}
+
+	@Test
+	public void testKeptCollectionAfterVisit() throws Exception
+	{
+		AS3MutationVisitor visitor = new AS3MutationVisitor();
+		Map<String,String> classes = visitor.getClassesToClasses();
+		assertTrue(mutate(visitor, SOURCE).contains("foo:Foo"));
+		classes.put("Foo", "Bar");
+		assertTrue(mutate(visitor, SOURCE).contains("foo:Bar"));
+	}
+
+	@Test
+	public void testGetterOfSharedConfig() throws Exception
+	{
+		AS3MutationVisitor template = new AS3MutationVisitor();
+		MutationConfig config = template.getConfig();
+		AS3MutationVisitor visitor = new AS3MutationVisitor(config);
+		assertTrue(mutate(visitor, SOURCE).contains("foo:Foo"));
+		visitor.getClassesToClasses().put("Foo", "Bar");
+		assertTrue(mutate(visitor, SOURCE).contains("foo:Bar"));
+		// the config handed out before stays as it was
+		assertTrue(mutate(new AS3MutationVisitor(config), SOURCE).contains("foo:Foo"));
+	}
+
+	@Test
+	public void testRuleChangeAfterClassify() throws Exception
+	{
+		AS3MutationVisitor visitor = new AS3MutationVisitor();
+		String as3 = mutate(visitor, LIST_SOURCE);
+		assertTrue(as3.contains("list:List;"));
+		assertTrue(as3.contains("list.add(s)"));
+		TypeClassifier classifier = visitor.getConfig().getClassifier();
+
+		visitor.getClassesToVectors().add("List");
+		as3 = mutate(visitor, LIST_SOURCE);
+		assertTrue(as3.contains("list:Vector.<String>;"));
+		assertTrue(as3.contains("list.push(s)"));
+		assertNotSame(classifier, visitor.getConfig().getClassifier());
+	}
+
+	@Test
+	public void testSetterAfterClassify() throws Exception
+	{
+		AS3MutationVisitor visitor = new AS3MutationVisitor(new AS3MutationVisitor().getConfig());
+		assertTrue(mutate(visitor, LIST_SOURCE).contains("list:List;"));
+		visitor.setClassesToArrays(Collections.singletonList("List"));
+		assertTrue(mutate(visitor, LIST_SOURCE).contains("list:Array;"));
+	}
+
+	private static String mutate(AS3MutationVisitor visitor, String source) throws Exception
+	{
+		CompilationUnit cu = JavaParser.parse(new ByteArrayInputStream(source.getBytes("UTF-8")), "UTF-8");
+		visitor.setDiagnostics(Diagnostics.DISABLED);
+		visitor.visit(cu, null);
+		AS3DumpVisitor dump = new AS3DumpVisitor();
+		dump.visit(cu, null);
+		return dump.toString();
+	}
+}